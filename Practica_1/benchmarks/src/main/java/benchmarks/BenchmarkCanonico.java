@@ -0,0 +1,152 @@
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import codificacion.CodigosCanonicos;
+import codificacion.DecodificadorTabla;
+import codificacion.Frecuencias;
+import codificacion.HuffmanCanonico;
+import codificacion.HuffmanPorBloques;
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  BenchmarkCanonico: Etapas del compresor con codigos canonicos (frecuencias,
+ *  construccion de los codigos, codificacion en memoria y decodificacion por tabla) y
+ *  los modos completos sobre archivos: canonico (-cc/-dc) y por bloques (-cp/-dp).
+ *
+ **************************************************************************************/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkCanonico {
+
+	@State(Scope.Benchmark)
+	public static class Etapas {
+
+		long[] frecuencias;
+		CodigosCanonicos codigos;
+		byte[] longitudes = new byte[CodigosCanonicos.NUM_SIMBOLOS];
+		int[] tablaCodigos = new int[CodigosCanonicos.NUM_SIMBOLOS];
+		byte[] trama;
+		byte[] salida;
+		String canonico;
+		String porBloques;
+
+		@Setup(Level.Trial)
+		public void preparar(Entradas entradas) {
+			frecuencias = Frecuencias.contar(entradas.archivo.getPath());
+			codigos = CodigosCanonicos.desdeFrecuencias(frecuencias);
+			for (int s = 0; s < CodigosCanonicos.NUM_SIMBOLOS; s++) {
+				longitudes[s] = (byte) codigos.getLongitud(s);
+				tablaCodigos[s] = codigos.getCodigo(s);
+			}
+			ByteArrayOutputStream flujo = new ByteArrayOutputStream();
+			codificar(entradas.datos, Channels.newChannel(flujo));
+			trama = flujo.toByteArray();
+			salida = new byte[entradas.tamano];
+			canonico = entradas.temporal("canonico.huf");
+			HuffmanCanonico.comprimir(entradas.archivo.getPath(), canonico);
+			porBloques = entradas.temporal("bloques.huf");
+			HuffmanPorBloques.comprimir(entradas.archivo.getPath(), porBloques);
+		}
+
+		void codificar(byte[] datos, WritableByteChannel canal) {
+			EscritorBinarioNIO escritor = new EscritorBinarioNIO(canal);
+			for (int i = 0; i < datos.length; i++) {
+				int simbolo = datos[i] & 0xff;
+				escritor.escribirBits(tablaCodigos[simbolo], longitudes[simbolo]);
+			}
+			escritor.cerrarFlujo();
+		}
+	}
+
+	/*
+	 * Canal que descarta lo que se escribe, para medir solo la codificacion.
+	 */
+	private static final class CanalNulo implements WritableByteChannel {
+		@Override
+		public int write(ByteBuffer origen) {
+			int n = origen.remaining();
+			origen.position(origen.limit());
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {}
+	}
+
+	@Benchmark
+	public long[] frecuencias(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		rendimiento.bytes += entradas.tamano;
+		return Frecuencias.contar(entradas.archivo.getPath());
+	}
+
+	@Benchmark
+	public CodigosCanonicos construirCodigos(Etapas etapas) {
+		return CodigosCanonicos.desdeFrecuencias(etapas.frecuencias);
+	}
+
+	@Benchmark
+	public void codificar(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		etapas.codificar(entradas.datos, new CanalNulo());
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public byte[] decodificar(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		LectorBinarioNIO lector = new LectorBinarioNIO(ByteBuffer.wrap(etapas.trama));
+		new DecodificadorTabla(etapas.codigos).decodificar(lector, etapas.salida, 0, etapas.salida.length);
+		rendimiento.bytes += entradas.tamano;
+		return etapas.salida;
+	}
+
+	@Benchmark
+	public void comprimirCanonico(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		HuffmanCanonico.comprimir(entradas.archivo.getPath(), entradas.temporal("salida.huf"));
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public void descomprimirCanonico(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		HuffmanCanonico.descomprimir(etapas.canonico, entradas.temporal("salida.bin"));
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public void comprimirPorBloques(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		HuffmanPorBloques.comprimir(entradas.archivo.getPath(), entradas.temporal("salida.huf"));
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public void descomprimirPorBloques(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		HuffmanPorBloques.descomprimir(etapas.porBloques, entradas.temporal("salida.bin"));
+		rendimiento.bytes += entradas.tamano;
+	}
+}
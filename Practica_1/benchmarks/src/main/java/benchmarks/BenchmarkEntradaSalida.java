@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entrada_salida.EscritorBinario;
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinario;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  BenchmarkEntradaSalida: Lectura y escritura de la entrada palabra a palabra (8 bits
+ *  por llamada) con las clases de entrada_salida, sin codificar nada. Es el coste minimo
+ *  de recorrer la entrada con cada implementacion.
+ *
+ **************************************************************************************/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkEntradaSalida {
+
+	@Benchmark
+	public int lectorBinario(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		LectorBinario lector = new LectorBinario(entradas.archivo.getPath());
+		int suma = 0;
+		while (!lector.esVacio()) {
+			suma += lector.leerPalabra();
+		}
+		lector.cerrarFlujo();
+		rendimiento.bytes += entradas.tamano;
+		return suma;
+	}
+
+	@Benchmark
+	public void escritorBinario(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		EscritorBinario escritor = new EscritorBinario(entradas.temporal("salida.bin"));
+		byte[] datos = entradas.datos;
+		for (int i = 0; i < datos.length; i++) {
+			escritor.escribirPalabra(datos[i] & 0xff);
+		}
+		escritor.cerrarFlujo();
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public int lectorBinarioNIO(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		LectorBinarioNIO lector = new LectorBinarioNIO(entradas.archivo.getPath());
+		int suma = 0;
+		for (int i = 0; i < entradas.tamano; i++) {
+			suma += lector.leerBits(8);
+		}
+		lector.cerrarFlujo();
+		rendimiento.bytes += entradas.tamano;
+		return suma;
+	}
+
+	@Benchmark
+	public int lectorBinarioNIOMemoria(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		LectorBinarioNIO lector = new LectorBinarioNIO(ByteBuffer.wrap(entradas.datos));
+		int suma = 0;
+		for (int i = 0; i < entradas.tamano; i++) {
+			suma += lector.leerBits(8);
+		}
+		rendimiento.bytes += entradas.tamano;
+		return suma;
+	}
+
+	@Benchmark
+	public void escritorBinarioNIO(Entradas entradas, Entradas.Rendimiento rendimiento) {
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(entradas.temporal("salida.bin"));
+		byte[] datos = entradas.datos;
+		for (int i = 0; i < datos.length; i++) {
+			escritor.escribirBits(datos[i], 8);
+		}
+		escritor.cerrarFlujo();
+		rendimiento.bytes += entradas.tamano;
+	}
+}
@@ -0,0 +1,136 @@
+package benchmarks;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import estructuras_datos.ArbolHuffman;
+
+/**************************************************************************************
+ *
+ *  BenchmarkPlantilla: Cada etapa del compresor original de PlantillaCodificacionHuffman
+ *  por separado (construirArbol, construirCodigos, codificar y descomprimir) y el
+ *  proceso completo. La plantilla esta en el paquete por defecto y sus etapas son
+ *  privadas, asi que se invocan por reflexion; el coste de la llamada es despreciable
+ *  frente al trabajo de cada etapa.
+ *
+ **************************************************************************************/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkPlantilla {
+
+	/*
+	 * Resultados de cada etapa, calculados una vez, que sirven de entrada a la siguiente.
+	 */
+	@State(Scope.Benchmark)
+	public static class Etapas {
+
+		Object plantilla;
+		Method construirArbol;
+		Method construirCodigos;
+		Method codificar;
+		Method comprimir;
+		Method descomprimir;
+
+		char[] input;
+		Hashtable<Character, Integer> freq;
+		ArbolHuffman arbol;
+		Hashtable<Character, String> diccionario;
+		String comprimido;
+
+		@Setup(Level.Trial)
+		public void preparar(Entradas entradas) throws Exception {
+			Class<?> clase = Class.forName("PlantillaCodificacionHuffman");
+			Constructor<?> constructor = clase.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			plantilla = constructor.newInstance();
+			construirArbol = metodo(clase, "construirArbol", Hashtable.class);
+			construirCodigos = metodo(clase, "construirCodigos", Hashtable.class, ArbolHuffman.class, String.class);
+			codificar = metodo(clase, "codificar", char[].class, Hashtable.class, String.class, ArbolHuffman.class);
+			comprimir = metodo(clase, "comprimir", String.class, String.class);
+			descomprimir = metodo(clase, "descomprimir", String.class, String.class);
+
+			// Mismos pasos que comprimir(): el byte se lee como char de 8 bits.
+			input = new char[entradas.tamano];
+			freq = new Hashtable<Character, Integer>();
+			for (int i = 0; i < input.length; i++) {
+				input[i] = (char) (entradas.datos[i] & 0xff);
+				Integer f = freq.get(input[i]);
+				freq.put(input[i], (f == null) ? 1 : f + 1);
+			}
+			arbol = (ArbolHuffman) invocar(construirArbol, freq);
+			diccionario = new Hashtable<Character, String>();
+			invocar(construirCodigos, diccionario, arbol, "");
+			comprimido = entradas.temporal("plantilla.huf");
+			invocar(codificar, input, diccionario, comprimido, arbol);
+		}
+
+		private static Method metodo(Class<?> clase, String nombre, Class<?>... parametros)
+				throws NoSuchMethodException {
+			Method m = clase.getDeclaredMethod(nombre, parametros);
+			m.setAccessible(true);
+			return m;
+		}
+
+		Object invocar(Method metodo, Object... args) {
+			try {
+				return metodo.invoke(plantilla, args);
+			} catch (InvocationTargetException e) {
+				Throwable causa = e.getCause();
+				if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+				throw new RuntimeException(causa);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@Benchmark
+	public Object construirArbol(Etapas etapas) {
+		return etapas.invocar(etapas.construirArbol, etapas.freq);
+	}
+
+	@Benchmark
+	public Object construirCodigos(Etapas etapas) {
+		Hashtable<Character, String> diccionario = new Hashtable<Character, String>();
+		etapas.invocar(etapas.construirCodigos, diccionario, etapas.arbol, "");
+		return diccionario;
+	}
+
+	@Benchmark
+	public void codificar(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		etapas.invocar(etapas.codificar, etapas.input, etapas.diccionario,
+				entradas.temporal("codificado.huf"), etapas.arbol);
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public void descomprimir(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		etapas.invocar(etapas.descomprimir, etapas.comprimido, entradas.temporal("descomprimido.bin"));
+		rendimiento.bytes += entradas.tamano;
+	}
+
+	@Benchmark
+	public void comprimir(Entradas entradas, Etapas etapas, Entradas.Rendimiento rendimiento) {
+		etapas.invocar(etapas.comprimir, entradas.archivo.getPath(), entradas.temporal("comprimido.huf"));
+		rendimiento.bytes += entradas.tamano;
+	}
+}
@@ -0,0 +1,31 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**************************************************************************************
+ *
+ *  Ejecutar: Punto de entrada de benchmarks.jar. Acepta las mismas opciones que
+ *  org.openjdk.jmh.Main y anade siempre el perfilador gc, de modo que cada resultado
+ *  incluye la tasa de reserva de memoria (gc.alloc.rate.norm, bytes por operacion)
+ *  junto al rendimiento. El contador "bytes" de cada benchmark es el numero de bytes
+ *  de la entrada procesados por segundo.
+ *
+ **************************************************************************************/
+
+public final class Ejecutar {
+
+	private Ejecutar() {}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions opciones = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+				.parent(opciones)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**************************************************************************************
+ *
+ *  Entradas: Datos de prueba comunes a todos los benchmarks. Para cada combinacion de
+ *  tipo y tamano se genera (siempre con la misma semilla) un array de bytes y un archivo
+ *  temporal con el mismo contenido:
+ *
+ *  	texto          palabras de un vocabulario con frecuencias de tipo Zipf
+ *  	aleatorio      bytes uniformes (incompresible)
+ *  	baja_entropia  un byte con probabilidad 0.9, el resto entre otros cuatro
+ *  	un_simbolo     todos los bytes iguales
+ *
+ *  Los tamanos por defecto van de 1 KB a 64 MB; para 1 GB hay que pedirlo con
+ *  -p tamano=1073741824 y dar memoria suficiente al proceso con -jvmArgs -Xmx8g (los
+ *  modos que cargan la entrada entera, como comprimir() de la plantilla, usan un char[]).
+ *
+ **************************************************************************************/
+
+@State(Scope.Benchmark)
+public class Entradas {
+
+	@Param({"texto", "aleatorio", "baja_entropia", "un_simbolo"})
+	public String tipo;
+
+	@Param({"1024", "1048576", "67108864"})
+	public int tamano;
+
+	public byte[] datos;
+	public File archivo;
+	private File directorio;
+
+	@Setup(Level.Trial)
+	public void preparar() throws IOException {
+		datos = generar(tipo, tamano);
+		directorio = Files.createTempDirectory("huffman-jmh").toFile();
+		archivo = new File(directorio, "entrada.bin");
+		Files.write(archivo.toPath(), datos);
+	}
+
+	@TearDown(Level.Trial)
+	public void limpiar() {
+		File[] archivos = directorio.listFiles();
+		if (archivos != null) {
+			for (File f : archivos) f.delete();
+		}
+		directorio.delete();
+	}
+
+	/**
+	 * @return Ruta de un archivo temporal de trabajo, que se borra al final del benchmark.
+	 */
+	public String temporal(String nombre) {
+		return new File(directorio, nombre).getPath();
+	}
+
+	static byte[] generar(String tipo, int tamano) {
+		Random aleatorio = new Random(42);
+		byte[] datos = new byte[tamano];
+		if (tipo.equals("texto")) {
+			String[] palabras = ("de la que el en y a los se del las un por con no una su para es al lo "
+					+ "como mas pero sus le ya o este arbol codigo huffman frecuencia simbolo bit byte "
+					+ "archivo comprimir descomprimir tabla cola prioridad hoja nodo trama cabecera")
+					.split(" ");
+			int i = 0;
+			while (i < tamano) {
+				// Rango de tipo Zipf: las primeras palabras son mucho mas frecuentes.
+				int rango = (int) (palabras.length * Math.pow(aleatorio.nextDouble(), 3));
+				byte[] palabra = (palabras[rango] + (aleatorio.nextInt(12) == 0 ? ".\n" : " "))
+						.getBytes(StandardCharsets.US_ASCII);
+				int n = Math.min(palabra.length, tamano - i);
+				System.arraycopy(palabra, 0, datos, i, n);
+				i += n;
+			}
+		} else if (tipo.equals("aleatorio")) {
+			aleatorio.nextBytes(datos);
+		} else if (tipo.equals("baja_entropia")) {
+			for (int i = 0; i < tamano; i++) {
+				datos[i] = (byte) (aleatorio.nextInt(10) != 0 ? 'a' : 'b' + aleatorio.nextInt(4));
+			}
+		} else if (tipo.equals("un_simbolo")) {
+			Arrays.fill(datos, (byte) 'a');
+		} else {
+			throw new IllegalArgumentException("Tipo de entrada desconocido: " + tipo);
+		}
+		return datos;
+	}
+
+	/**
+	 * Contador de bytes de entrada procesados; JMH lo muestra como bytes por segundo.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Rendimiento {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reiniciar() {
+			bytes = 0;
+		}
+	}
+}
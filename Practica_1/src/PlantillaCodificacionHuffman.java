@@ -1,18 +1,70 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.PriorityQueue;
 
+import codificacion.CompresionPorLotes;
+import codificacion.DecodificadorTabla;
+import codificacion.DiccionarioHuffman;
+import codificacion.EstadisticasCompresion;
+import codificacion.FlujoEntradaHuffman;
+import codificacion.FlujoSalidaHuffman;
+import codificacion.Frecuencias;
+import codificacion.HuffmanAdaptativo;
+import codificacion.HuffmanCanonico;
+import codificacion.HuffmanOrden1;
+import codificacion.HuffmanPorBloques;
+import codificacion.LectorAleatorioHuffman;
+import codificacion.MonitorCompresion;
 import entrada_salida.EscritorBinario;
+import entrada_salida.EscritorBinarioNIO;
 import entrada_salida.LectorBinario;
+import entrada_salida.LectorBinarioNIO;
 import estructuras_datos.ArbolHuffman;
 
 /********************************************************************************************
- * Autores: Luis Miguel Ortiz Rozaln, Amanda Snchez Garca
+ * Autores: Luis Miguel Ortiz Rozalén, Amanda Sánchez García
  * 
  *  Ejecucion: 
  *  	% Comprimir:    java PlantillaCodificacionHuffman -c filePathIn filePathOut
  *      % Decomprimir:  java PlantillaCodificacionHuffman -d filePathIn filePathOut
+ *      % Comprimir sin cargar la entrada en memoria (dos pasadas):
+ *                      java PlantillaCodificacionHuffman -cs filePathIn filePathOut
+ *      % Comprimir/descomprimir con codigos canonicos:
+ *                      java PlantillaCodificacionHuffman -cc|-dc filePathIn filePathOut
+ *        limitando la longitud de los codigos a longitudMaxima bits (1 a 32):
+ *                      java PlantillaCodificacionHuffman -cc filePathIn filePathOut longitudMaxima
+ *      % Comprimir/descomprimir con modelo de contexto de orden 1 (codigos segun el byte anterior):
+ *                      java PlantillaCodificacionHuffman -co|-do filePathIn filePathOut
+ *      % Comprimir/descomprimir por bloques en paralelo:
+ *                      java PlantillaCodificacionHuffman -cp|-dp filePathIn filePathOut
+ *      % Extraer un rango de un archivo comprimido por bloques, sin descomprimirlo entero:
+ *                      java PlantillaCodificacionHuffman -r filePathIn desplazamiento longitud filePathOut
+ *      % Comprimir/descomprimir en una sola pasada (Huffman adaptativo); "-" es la entrada
+ *        o salida estandar, para usarlo en tuberias:
+ *                      java PlantillaCodificacionHuffman -ca|-da filePathIn|- filePathOut|-
+ *      % Comprimir/descomprimir con los flujos por bloques (FlujoSalidaHuffman/FlujoEntradaHuffman):
+ *                      java PlantillaCodificacionHuffman -cf|-df filePathIn|- filePathOut|-
+ *      % Comprimir/descomprimir por lotes todos los archivos de un directorio, o los de una
+ *        lista (una ruta por linea), en dirOut, con varios hilos; al final se muestra un informe:
+ *                      java PlantillaCodificacionHuffman -cl|-dl dirIn|@lista dirOut [hilos]
+ *      % Entrenar un diccionario con un corpus, y comprimir/descomprimir mensajes pequenos
+ *        con el, sin cabecera de arbol:
+ *                      java PlantillaCodificacionHuffman -e filePathDiccionario fileCorpus...
+ *                      java PlantillaCodificacionHuffman -cd|-dd filePathDiccionario filePathIn filePathOut
+ *      % Con -s delante de cualquier modo se escribe en la salida de error un resumen JSON
+ *        de la operacion, el que registra en MonitorCompresion (tiempos por etapa, bytes y,
+ *        si se conocen, entropia, bits por simbolo y profundidad), o el del informe en los lotes:
+ *                      java PlantillaCodificacionHuffman -s -c filePathIn filePathOut
  *  
  *  Utilidad: Permite la compresion/descompresion usando el algoritmo de Huffman
  *  de un archivo de entrada hacia un archivo de salida. 
@@ -24,6 +76,14 @@ public class PlantillaCodificacionHuffman {
 	
 	private Hashtable<Character,String> diccionarioCodigos = new Hashtable<Character,String>();;
 
+	// Tamano del buffer de lectura en los modos que recorren la entrada por bloques.
+	private static final int TAM_BUFFER = 1 << 16;
+
+	// Medidas de la ultima operacion de los modos -c, -cs y -d (null si no se ha hecho ninguna).
+	private EstadisticasCompresion estadisticas;
+	// Informe del ultimo lote -cl o -dl (null si no se ha hecho ninguno).
+	private CompresionPorLotes.Informe ultimoLote;
+
 	// Constructor
 	private PlantillaCodificacionHuffman(){}
 	
@@ -34,6 +94,7 @@ public class PlantillaCodificacionHuffman {
 	*/
     public void comprimir(String filePathIn, String filePathOut) {
 		
+    	EstadisticasCompresion medidas = new EstadisticasCompresion("comprimir");
     	LectorBinario lector = new LectorBinario(filePathIn);
 		// Leer archivo de entrada y almacenar en una cadena
 		StringBuilder sb = new StringBuilder();
@@ -42,6 +103,7 @@ public class PlantillaCodificacionHuffman {
 			sb.append(b); 	// OJO! leerPalabra() devuelve una palabra de 8 bits y el tipo char es de 16 bits
 		}
 		char[] input = sb.toString().toCharArray();
+		medidas.finEtapa("lectura");
 
 		/* TAREA1.1: Generar tabla de frecuencias (freq) a partir del array de tipo char input. */
 		
@@ -54,17 +116,116 @@ public class PlantillaCodificacionHuffman {
 				freq.put(input[i], 1);
 			}
 		}
+		medidas.finEtapa("frecuencias");
 		// Construir Arbol de Huffman.
         ArbolHuffman arbol = construirArbol(freq); 
+        medidas.finEtapa("arbol");
 		
 		// Construir diccionario de busqueda -> Pares (simbolo,codigo).
 		// diccionarioCodigos sera una estructura de tipo Map, Hashtable, String[], dependiendo de la implementacion elegida.
         construirCodigos(diccionarioCodigos,arbol,"");
+        medidas.finEtapa("codigos");
 		
 		// Codificar la trama (char[]input) usando el diccionario de codigos.
         codificar(input,diccionarioCodigos,filePathOut,arbol);
+        medidas.finEtapa("codificacion");
+
+        long[] frecuencias = new long[256];
+        for (Map.Entry<Character, Integer> par : freq.entrySet()) {
+        	frecuencias[par.getKey()] = par.getValue();
+        }
+        terminarMedidas(medidas, frecuencias, input.length, filePathOut);
 	}
     
+   /*
+    * Compresion en dos pasadas que no almacena la entrada en memoria: la primera pasada cuenta
+    * las frecuencias directamente sobre el archivo y la segunda lo vuelve a leer y lo codifica
+    * bloque a bloque. La memoria usada queda acotada por TAM_BUFFER sea cual sea el tamano de
+    * la entrada, y el archivo de salida tiene el mismo formato que el de comprimir().
+    */
+    public void comprimirEnDosPasadas(String filePathIn, String filePathOut) {
+
+    	// Primera pasada: tabla de frecuencias.
+    	EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirEnDosPasadas");
+    	long[] frecuencias = Frecuencias.contarEnParalelo(filePathIn);
+    	medidas.finEtapa("frecuencias");
+    	long longitud = 0;
+    	Hashtable<Character, Integer> freq = new Hashtable<Character, Integer>();
+    	for (int simbolo = 0; simbolo < frecuencias.length; simbolo++) {
+    		longitud += frecuencias[simbolo];
+    		if (frecuencias[simbolo] > 0) {
+    			freq.put((char) simbolo, (int) frecuencias[simbolo]);
+    		}
+    	}
+    	// La cabecera guarda el numero de bytes como un entero de 32 bits.
+    	if (longitud > Integer.MAX_VALUE) {
+    		throw new RuntimeException("El archivo de entrada supera el tamano maximo del formato (2 GB)");
+    	}
+
+    	ArbolHuffman arbol = construirArbol(freq);
+    	medidas.finEtapa("arbol");
+    	construirCodigos(diccionarioCodigos, arbol, "");
+    	medidas.finEtapa("codigos");
+    	// Diccionario indexado por el valor del byte para no buscar en la Hashtable por simbolo.
+    	String[] codigos = new String[256];
+    	for (Map.Entry<Character, String> par : diccionarioCodigos.entrySet()) {
+    		codigos[par.getKey()] = par.getValue();
+    	}
+
+    	EscritorBinario escritor = new EscritorBinario(filePathOut);
+    	serializarArbol(arbol, escritor);
+    	escritor.escribirEntero((int) longitud);
+
+    	// Segunda pasada: codificar la entrada bloque a bloque.
+    	LectorBinario lector = new LectorBinario(filePathIn);
+    	byte[] bloque = new byte[TAM_BUFFER];
+    	long codificados = 0;
+    	int leidos;
+    	while ((leidos = lector.leerBytes(bloque, 0, bloque.length)) > 0) {
+    		for (int i = 0; i < leidos; i++) {
+    			String codigo = codigos[bloque[i] & 0xff];
+    			if (codigo == null) {
+    				throw new RuntimeException("El archivo de entrada ha cambiado entre las dos pasadas");
+    			}
+    			for (int j = 0; j < codigo.length(); j++) {
+    				escritor.escribirBit(codigo.charAt(j) == '1');
+    			}
+    		}
+    		codificados += leidos;
+    	}
+    	lector.cerrarFlujo();
+    	escritor.cerrarFlujo();
+    	if (codificados != longitud) {
+    		throw new RuntimeException("El archivo de entrada ha cambiado entre las dos pasadas");
+    	}
+    	medidas.finEtapa("codificacion");
+    	terminarMedidas(medidas, frecuencias, longitud, filePathOut);
+    }
+
+   /*
+    * Completa las medidas de una compresion con las propiedades del codigo usado y las
+    * registra en el monitor JMX.
+    */
+    private void terminarMedidas(EstadisticasCompresion medidas, long[] frecuencias, long bytesEntrada,
+    		String filePathOut) {
+    	int[] longitudes = new int[256];
+    	for (Map.Entry<Character, String> par : diccionarioCodigos.entrySet()) {
+    		longitudes[par.getKey()] = par.getValue().length();
+    	}
+    	medidas.registrarCodigo(frecuencias, longitudes);
+    	medidas.setBytesEntrada(bytesEntrada);
+    	medidas.setBytesSalida(new File(filePathOut).length());
+    	MonitorCompresion.instancia().registrar(medidas);
+    	estadisticas = medidas;
+    }
+
+    /**
+     * @return Las medidas de la ultima operacion -c, -cs o -d; null si no se ha hecho ninguna.
+     */
+    public EstadisticasCompresion getEstadisticas() {
+    	return estadisticas;
+    }
+
    /* 
     * Construir arbol de Huffman a partir de la tabla de frecuencias.
     * (Si se ha usado una estructura Hashtable para albergar la tabla de frecuencias).
@@ -86,6 +247,11 @@ public class PlantillaCodificacionHuffman {
  		
     	/* TAREA 1.4: Crear el arbol de Huffman final iterando sobre la cola de prioridad.*/  
  		
+ 		// Una entrada vacia se representa con una sola hoja, igual que una de un solo simbolo:
+ 		// el codigo es vacio y la trama no ocupa ningun bit.
+ 		if(arboles.isEmpty()) {
+ 			return new ArbolHuffman('\0', 0, null, null);
+ 		}
  		while(arboles.size() != 1) {
  			ArbolHuffman subarbol1 = arboles.poll();
  			ArbolHuffman subarbol2 = arboles.poll();
@@ -103,7 +269,7 @@ public class PlantillaCodificacionHuffman {
     */
     private void construirCodigos(Hashtable<Character,String> diccionarioCodigos, ArbolHuffman arbol,String codigoCamino){
     	
-    	/* TAREA 1.5: Construir diccionario de bsqueda. */
+    	/* TAREA 1.5: Construir diccionario de búsqueda. */
     	
     		if(!arbol.esHoja()) {
     			if(arbol.getIzquierdo() != null) {
@@ -135,7 +301,8 @@ public class PlantillaCodificacionHuffman {
         escritor.escribirEntero(input.length);
     	
     	/* TAREA 1.6: Codificar trama y escribir el resultado en el archivo de salida. */
-        for(int i = 0; i < input.length; i++) {
+        // Si el arbol es una sola hoja todos los codigos son vacios y no hay trama que escribir.
+        for(int i = 0; i < input.length && !arbol.esHoja(); i++) {
         			String codigo = diccionarioCodigos.get(input[i]);
         			for(int j = 0; j < codigo.length(); j++) {
         				if(codigo.charAt(j) == '0') {
@@ -167,34 +334,193 @@ public class PlantillaCodificacionHuffman {
     
     /*
     * Se lee el archivo de entrada (filePathIn, a descomprimir) como secuencia de bits 
-    * usando LectorBinario, despues se descodifica usando el Arbol final de Huffman y el resultado 
-    * se escribe con la clase EscritorBinario en el archivo de salida (filePathOut, descomprimido).
+    * usando LectorBinarioNIO, despues se descodifica usando el Arbol final de Huffman y el resultado 
+    * se escribe con la clase EscritorBinarioNIO en el archivo de salida (filePathOut, descomprimido).
     */
     public void descomprimir(String filePathIn, String filePathOut) {
     
-    	LectorBinario lector = new LectorBinario(filePathIn);
-    	EscritorBinario escritor = new EscritorBinario(filePathOut);
+    	EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimir");
+    	LectorBinarioNIO lector = new LectorBinarioNIO(filePathIn);
+    	EscritorBinarioNIO escritor = new EscritorBinarioNIO(filePathOut);
 
     	ArbolHuffman arbol = leerArbol(lector);
 
     	// Numero de bytes a escribir
     	int length = lector.leerEntero();
+    	medidas.finEtapa("arbol");
 
     	/* TAREA1.7: Decodificacion de la trama codificada. */
-    	
-    	for (int i = 0; i < length; i++) {
-    		ArbolHuffman x = arbol;
-    		while (!x.esHoja()) {
-    			boolean bit = lector.leerBit();
-    			if (bit) x = x.getDerecho();
-    			else     x = x.getIzquierdo();
-    		}
-    		escritor.escribirPalabra(x.getSimbolo());
+    	if (arbol.esHoja()) {
+    		// Entrada vacia o de un solo simbolo: no hay trama, se repite el simbolo.
+    		escribirRepetido(escritor, (byte) arbol.getSimbolo(), length);
+    	} else {
+    		// Se decodifica con una tabla indexada por los siguientes bits de la trama, que
+    		// devuelve simbolos completos en lugar de recorrer el arbol bit a bit.
+    		new DecodificadorTabla(arbol).decodificar(lector, escritor, length);
     	}
+    	lector.cerrarFlujo();
     	escritor.cerrarFlujo();
+    	medidas.finEtapa("decodificacion");
+    	medidas.setBytesEntrada(new File(filePathIn).length());
+    	medidas.setBytesSalida(length);
+    	MonitorCompresion.instancia().registrar(medidas);
+    	estadisticas = medidas;
     }
     
-    private ArbolHuffman leerArbol(LectorBinario lector) {
+    private void escribirRepetido(EscritorBinarioNIO escritor, byte simbolo, int veces) {
+    	byte[] bloque = new byte[Math.min(veces, TAM_BUFFER)];
+    	Arrays.fill(bloque, simbolo);
+    	while (veces > 0) {
+    		int n = Math.min(veces, bloque.length);
+    		escritor.escribirBytes(bloque, 0, n);
+    		veces -= n;
+    	}
+    }
+
+   /*
+    * Compresion con codigos de Huffman canonicos: la cabecera solo guarda las longitudes de
+    * los codigos y tanto el codificador como el decodificador trabajan con tablas de enteros.
+    */
+    public void comprimirCanonico(String filePathIn, String filePathOut) {
+    	HuffmanCanonico.comprimir(filePathIn, filePathOut);
+    }
+
+    public void comprimirCanonico(String filePathIn, String filePathOut, int longitudMaxima) {
+    	HuffmanCanonico.comprimir(filePathIn, filePathOut, longitudMaxima);
+    }
+
+    public void descomprimirCanonico(String filePathIn, String filePathOut) {
+    	HuffmanCanonico.descomprimir(filePathIn, filePathOut);
+    }
+
+   /*
+    * Modelo de contexto de orden 1: una tabla de codigos por cada valor del byte anterior.
+    */
+    public void comprimirOrden1(String filePathIn, String filePathOut) {
+    	HuffmanOrden1.comprimir(filePathIn, filePathOut);
+    }
+
+    public void descomprimirOrden1(String filePathIn, String filePathOut) {
+    	HuffmanOrden1.descomprimir(filePathIn, filePathOut);
+    }
+
+   /*
+    * Compresion por bloques independientes, cada uno con sus propios codigos canonicos, que
+    * se comprimen y descomprimen en paralelo usando todos los procesadores.
+    */
+    public void comprimirPorBloques(String filePathIn, String filePathOut) {
+    	HuffmanPorBloques.comprimir(filePathIn, filePathOut);
+    }
+
+    public void descomprimirPorBloques(String filePathIn, String filePathOut) {
+    	HuffmanPorBloques.descomprimir(filePathIn, filePathOut);
+    }
+
+   /*
+    * Lectura aleatoria sobre un archivo comprimido por bloques: se descomprimen solo los
+    * bloques que contienen los bytes [desplazamiento, desplazamiento + longitud).
+    */
+    public void extraerRango(String filePathIn, long desplazamiento, int longitud, String filePathOut) {
+    	try (LectorAleatorioHuffman lector = new LectorAleatorioHuffman(filePathIn)) {
+    		byte[] rango = lector.leer(desplazamiento, longitud);
+    		EscritorBinario escritor = new EscritorBinario(filePathOut);
+    		escritor.escribirBytes(rango, 0, rango.length);
+    		escritor.cerrarFlujo();
+    	}
+    }
+
+   /*
+    * Huffman adaptativo: se empieza a escribir la salida en cuanto llegan datos a la entrada
+    * y el modelo se actualiza sobre la marcha, sin pasada previa de frecuencias.
+    */
+    public void comprimirAdaptativo(String filePathIn, String filePathOut) {
+    	try (InputStream entrada = abrirEntrada(filePathIn); OutputStream salida = abrirSalida(filePathOut)) {
+    		HuffmanAdaptativo.comprimir(entrada, salida);
+    	} catch (IOException e) {
+    		throw new RuntimeException("Error comprimiendo " + filePathIn, e);
+    	}
+    }
+
+    public void descomprimirAdaptativo(String filePathIn, String filePathOut) {
+    	try (InputStream entrada = abrirEntrada(filePathIn); OutputStream salida = abrirSalida(filePathOut)) {
+    		HuffmanAdaptativo.descomprimir(entrada, salida);
+    	} catch (IOException e) {
+    		throw new RuntimeException("Error descomprimiendo " + filePathIn, e);
+    	}
+    }
+
+   /*
+    * Flujos por bloques: la compresion se hace al vuelo sobre cualquier InputStream/OutputStream.
+    */
+    public void comprimirFlujo(String filePathIn, String filePathOut) {
+    	try (InputStream entrada = abrirEntrada(filePathIn);
+    			OutputStream salida = new FlujoSalidaHuffman(abrirSalida(filePathOut))) {
+    		copiar(entrada, salida);
+    	} catch (IOException e) {
+    		throw new RuntimeException("Error comprimiendo " + filePathIn, e);
+    	}
+    }
+
+    public void descomprimirFlujo(String filePathIn, String filePathOut) {
+    	try (InputStream entrada = new FlujoEntradaHuffman(abrirEntrada(filePathIn));
+    			OutputStream salida = abrirSalida(filePathOut)) {
+    		copiar(entrada, salida);
+    	} catch (IOException e) {
+    		throw new RuntimeException("Error descomprimiendo " + filePathIn, e);
+    	}
+    }
+
+   /*
+    * Lotes: cada archivo se comprime con los flujos por bloques en un grupo fijo de hilos.
+    */
+    public void comprimirLote(String entrada, String dirSalida, int hilos) {
+    	terminarLote(CompresionPorLotes.procesar(entrada, dirSalida, true, hilos));
+    }
+
+    public void descomprimirLote(String entrada, String dirSalida, int hilos) {
+    	terminarLote(CompresionPorLotes.procesar(entrada, dirSalida, false, hilos));
+    }
+
+    private void terminarLote(CompresionPorLotes.Informe informe) {
+    	System.out.print(informe);
+    	ultimoLote = informe;
+    }
+
+    private void copiar(InputStream entrada, OutputStream salida) throws IOException {
+    	byte[] buffer = new byte[TAM_BUFFER];
+    	int leidos;
+    	while ((leidos = entrada.read(buffer)) >= 0) {
+    		salida.write(buffer, 0, leidos);
+    	}
+    }
+
+   /*
+    * Diccionario estatico: los codigos se entrenan una vez con un corpus y se reutilizan
+    * para muchos mensajes, que se comprimen sin cabecera de arbol.
+    */
+    public void entrenarDiccionario(String filePathDiccionario, String... corpus) {
+    	DiccionarioHuffman.entrenar(corpus).guardar(filePathDiccionario);
+    }
+
+    public void comprimirConDiccionario(String filePathDiccionario, String filePathIn, String filePathOut) {
+    	DiccionarioHuffman.cargar(filePathDiccionario).comprimir(filePathIn, filePathOut);
+    }
+
+    public void descomprimirConDiccionario(String filePathDiccionario, String filePathIn, String filePathOut) {
+    	DiccionarioHuffman.cargar(filePathDiccionario).descomprimir(filePathIn, filePathOut);
+    }
+
+    // "-" representa la entrada estandar. No se envuelve en un buffer para no retrasar los datos.
+    private InputStream abrirEntrada(String path) throws IOException {
+    	return path.equals("-") ? System.in : new BufferedInputStream(new FileInputStream(path));
+    }
+
+    // "-" representa la salida estandar.
+    private OutputStream abrirSalida(String path) throws IOException {
+    	return new BufferedOutputStream(path.equals("-") ? System.out : new FileOutputStream(path));
+    }
+
+    private ArbolHuffman leerArbol(LectorBinarioNIO lector) {
     	
     	boolean esHoja = lector.leerBit();
     	if (esHoja) {
@@ -209,11 +535,63 @@ public class PlantillaCodificacionHuffman {
 	public static void main(String[] args) {
 		
 		PlantillaCodificacionHuffman huffman = new PlantillaCodificacionHuffman();
-		if(args.length==3){ 
+		boolean conEstadisticas = args.length > 0 && args[0].equals("-s");
+		if (conEstadisticas) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		if(args.length>=3 && args[0].equals("-e")){
+			huffman.entrenarDiccionario(args[1], Arrays.copyOfRange(args, 2, args.length));
+		}else if((args.length==3 || args.length==4) && (args[0].equals("-cl") || args[0].equals("-dl"))){
+			int hilos = (args.length==4) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+			if(args[0].equals("-cl")){
+				huffman.comprimirLote(args[1], args[2], hilos);
+			}else{
+				huffman.descomprimirLote(args[1], args[2], hilos);
+			}
+		}else if(args.length==3){ 
 			if(args[0].equals("-c")){
 				huffman.comprimir(args[1],args[2]);
 			}else if (args[0].equals("-d")){
 				huffman.descomprimir(args[1], args[2]);
+			}else if (args[0].equals("-cs")){
+				huffman.comprimirEnDosPasadas(args[1], args[2]);
+			}else if (args[0].equals("-cc")){
+				huffman.comprimirCanonico(args[1], args[2]);
+			}else if (args[0].equals("-dc")){
+				huffman.descomprimirCanonico(args[1], args[2]);
+			}else if (args[0].equals("-co")){
+				huffman.comprimirOrden1(args[1], args[2]);
+			}else if (args[0].equals("-do")){
+				huffman.descomprimirOrden1(args[1], args[2]);
+			}else if (args[0].equals("-cp")){
+				huffman.comprimirPorBloques(args[1], args[2]);
+			}else if (args[0].equals("-dp")){
+				huffman.descomprimirPorBloques(args[1], args[2]);
+			}else if (args[0].equals("-ca")){
+				huffman.comprimirAdaptativo(args[1], args[2]);
+			}else if (args[0].equals("-da")){
+				huffman.descomprimirAdaptativo(args[1], args[2]);
+			}else if (args[0].equals("-cf")){
+				huffman.comprimirFlujo(args[1], args[2]);
+			}else if (args[0].equals("-df")){
+				huffman.descomprimirFlujo(args[1], args[2]);
+			}
+		}else if(args.length==5 && args[0].equals("-r")){
+			huffman.extraerRango(args[1], Long.parseLong(args[2]), Integer.parseInt(args[3]), args[4]);
+		}else if(args.length==4 && args[0].equals("-cc")){
+			huffman.comprimirCanonico(args[1], args[2], Integer.parseInt(args[3]));
+		}else if(args.length==4 && args[0].equals("-cd")){
+			huffman.comprimirConDiccionario(args[1], args[2], args[3]);
+		}else if(args.length==4 && args[0].equals("-dd")){
+			huffman.descomprimirConDiccionario(args[1], args[2], args[3]);
+		}
+		if (conEstadisticas && args.length >= 3) {
+			// Cada modo registra sus propias medidas en el monitor; un lote se resume con su informe.
+			EstadisticasCompresion medidas = MonitorCompresion.instancia().getUltima();
+			if (huffman.ultimoLote != null) {
+				System.err.println(huffman.ultimoLote.aJson());
+			} else if (medidas != null) {
+				System.err.println(medidas.aJson());
 			}
 		}
 	}
@@ -0,0 +1,500 @@
+package codificacion;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  CodigosCanonicos: Codigos de Huffman canonicos para los 256 valores de byte.
+ *  Solo las longitudes de los codigos determinan el codigo: dentro de cada longitud
+ *  los codigos se asignan consecutivamente por orden de simbolo. Por eso la cabecera
+ *  solo necesita guardar las longitudes, y codificador y decodificador trabajan con
+ *  tablas de enteros indexadas por el valor del byte.
+ *
+ **************************************************************************************/
+
+public class CodigosCanonicos {
+
+	public static final int NUM_SIMBOLOS = 256;
+	// Los codigos se guardan en un int, lo que limita su longitud.
+	public static final int LONGITUD_MAXIMA = 32;
+
+	// longitudes[s] = longitud del codigo del byte s (0 si no aparece).
+	final byte[] longitudes;
+	// codigos[s] = bits del codigo del byte s, alineados a la derecha.
+	final int[] codigos;
+	private int longitudMaxima;
+	// Arrays de trabajo de recalcular(); null salvo en las instancias reutilizables.
+	private final Auxiliares auxiliares;
+
+	/*
+	 * Arrays de trabajo para calcular las longitudes de n simbolos presentes.
+	 */
+	private static final class Auxiliares {
+		final int[] simbolos;
+		final long[] claves;
+		final long[] peso;
+		final int[] padre;
+		final int[] profundidad;
+		final long[] siguiente = new long[LONGITUD_MAXIMA + 1];
+		// Los de package-merge se crean la primera vez que hacen falta.
+		long[] hojas;
+		long[] pesos;
+		long[] pesosSiguiente;
+		int[] longitudOrdenada;
+		boolean[] esPaquete;
+
+		Auxiliares(int n) {
+			simbolos = new int[n];
+			claves = new long[n];
+			peso = new long[Math.max(2 * n - 1, 0)];
+			padre = new int[Math.max(2 * n - 1, 0)];
+			profundidad = new int[Math.max(2 * n - 1, 0)];
+		}
+
+		void prepararPackageMerge(int longitudMaxima) {
+			int n = simbolos.length;
+			if (hojas == null) {
+				hojas = new long[n];
+				pesos = new long[2 * n];
+				pesosSiguiente = new long[2 * n];
+				longitudOrdenada = new int[n];
+			}
+			if (esPaquete == null || esPaquete.length < longitudMaxima * 2 * n) {
+				esPaquete = new boolean[longitudMaxima * 2 * n];
+			}
+		}
+	}
+
+	private CodigosCanonicos(byte[] longitudes, Auxiliares auxiliares) {
+		this.longitudes = longitudes;
+		this.codigos = new int[NUM_SIMBOLOS];
+		this.auxiliares = auxiliares;
+		asignarCodigos();
+	}
+
+	/*
+	 * Calcula codigos[] y longitudMaxima a partir de longitudes[]. siguiente[l] cuenta
+	 * primero los codigos de longitud l y luego guarda el siguiente codigo de esa longitud.
+	 */
+	private void asignarCodigos() {
+		long[] siguiente = (auxiliares == null) ? new long[LONGITUD_MAXIMA + 1] : auxiliares.siguiente;
+		Arrays.fill(siguiente, 0);
+		int maxima = 0;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			siguiente[longitudes[s]]++;
+			maxima = Math.max(maxima, longitudes[s]);
+		}
+		this.longitudMaxima = maxima;
+
+		// Primer codigo de cada longitud.
+		long codigo = 0;
+		long anteriores = 0;
+		for (int l = 1; l <= LONGITUD_MAXIMA; l++) {
+			codigo = (codigo + anteriores) << 1;
+			anteriores = siguiente[l];
+			siguiente[l] = codigo;
+		}
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			codigos[s] = (longitudes[s] > 0) ? (int) siguiente[longitudes[s]]++ : 0;
+		}
+	}
+
+	/*
+	 * Codigos que se sustituyen con recalcular() y cargar() sin reservar memoria, para
+	 * quien construye unos codigos por cada bloque pequeno (HuffmanPorBloques). El resto de
+	 * instancias son inmutables.
+	 */
+	static CodigosCanonicos reutilizable() {
+		return new CodigosCanonicos(new byte[NUM_SIMBOLOS], new Auxiliares(NUM_SIMBOLOS));
+	}
+
+	/*
+	 * Sustituye los codigos por los que daria desdeFrecuencias(frecuencias, longitudMaxima).
+	 * Solo para instancias creadas con reutilizable().
+	 */
+	void recalcular(long[] frecuencias, int longitudMaxima) {
+		calcularLongitudes(frecuencias, longitudMaxima, longitudes, auxiliares);
+		asignarCodigos();
+	}
+
+	/*
+	 * Sustituye los codigos por los de la cabecera que sigue en lector, como leer().
+	 */
+	void cargar(LectorBinarioNIO lector) {
+		leerLongitudes(lector, longitudes);
+		comprobarLongitudes(longitudes);
+		asignarCodigos();
+	}
+
+	/**
+	 * Calcula los codigos canonicos a partir de la tabla de frecuencias, con codigos de
+	 * como mucho LONGITUD_MAXIMA bits.
+	 *
+	 * @param frecuencias Frecuencia de cada uno de los 256 valores de byte.
+	 */
+	public static CodigosCanonicos desdeFrecuencias(long[] frecuencias) {
+		return desdeFrecuencias(frecuencias, LONGITUD_MAXIMA);
+	}
+
+	/**
+	 * Calcula los codigos canonicos a partir de la tabla de frecuencias, con codigos de
+	 * como mucho longitudMaxima bits. Si los codigos de Huffman superan ese limite, las
+	 * longitudes se calculan con el algoritmo package-merge, que da el codigo prefijo
+	 * optimo entre los que respetan el limite.
+	 *
+	 * @param frecuencias Frecuencia de cada uno de los 256 valores de byte.
+	 * @param longitudMaxima Longitud maxima de los codigos (1 a LONGITUD_MAXIMA).
+	 * @throws IllegalArgumentException si no caben todos los simbolos presentes en codigos
+	 *         de longitudMaxima bits.
+	 */
+	public static CodigosCanonicos desdeFrecuencias(long[] frecuencias, int longitudMaxima) {
+
+		if (longitudMaxima < 1 || longitudMaxima > LONGITUD_MAXIMA) {
+			throw new IllegalArgumentException("Longitud maxima no valida: " + longitudMaxima);
+		}
+		byte[] longitudes = new byte[NUM_SIMBOLOS];
+		calcularLongitudes(frecuencias, longitudMaxima, longitudes, new Auxiliares(contarPresentes(frecuencias)));
+		return new CodigosCanonicos(longitudes, null);
+	}
+
+	private static int contarPresentes(long[] freq) {
+		int n = 0;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			if (freq[s] > 0) n++;
+		}
+		return n;
+	}
+
+	/*
+	 * Guarda en longitudes las longitudes de Huffman de freq o, si alguna supera
+	 * longitudMaxima, las de package-merge.
+	 */
+	private static void calcularLongitudes(long[] freq, int longitudMaxima, byte[] longitudes, Auxiliares aux) {
+
+		int presentes = calcularLongitudesHuffman(freq, longitudes, aux);
+		int maxima = 0;
+		for (byte l : longitudes) {
+			maxima = Math.max(maxima, l & 0xff);
+		}
+		if (maxima <= longitudMaxima) return;
+		if (presentes > (1L << longitudMaxima)) {
+			throw new IllegalArgumentException(presentes + " simbolos no caben en codigos de "
+					+ longitudMaxima + " bits");
+		}
+		calcularLongitudesLimitadas(freq, longitudMaxima, longitudes, aux);
+	}
+
+	/*
+	 * Longitud de cada codigo = profundidad de su hoja en el arbol de Huffman. Con un solo
+	 * simbolo se le asigna longitud 1 para que todos los codigos tengan al menos un bit.
+	 * Devuelve el numero de simbolos presentes.
+	 *
+	 * El arbol se construye sin objetos ni cola de prioridad, con el metodo de las dos
+	 * colas: las hojas se ordenan por frecuencia y los nodos internos se crean ya en orden
+	 * creciente de peso, asi que los dos de menor peso estan siempre al principio de la
+	 * cola de hojas o de la de nodos internos. Los nodos son posiciones de peso[] (primero
+	 * las n hojas, luego los n - 1 internos) y el arbol solo guarda el padre de cada uno.
+	 */
+	private static int calcularLongitudesHuffman(long[] freq, byte[] longitudes, Auxiliares aux) {
+
+		Arrays.fill(longitudes, (byte) 0);
+		int n = ordenarPorFrecuencia(freq, aux);
+		int[] simbolos = aux.simbolos;
+		if (n == 0) return n;
+		if (n == 1) {
+			longitudes[simbolos[0]] = 1;
+			return n;
+		}
+		long[] peso = aux.peso;
+		int[] padre = aux.padre;
+		for (int i = 0; i < n; i++) {
+			peso[i] = freq[simbolos[i]];
+		}
+		int hoja = 0;
+		int interno = n;
+		for (int nodo = n; nodo < 2 * n - 1; nodo++) {
+			// En caso de empate se toma la hoja, lo que da el arbol menos profundo.
+			int a = (hoja < n && (interno == nodo || peso[hoja] <= peso[interno])) ? hoja++ : interno++;
+			int b = (hoja < n && (interno == nodo || peso[hoja] <= peso[interno])) ? hoja++ : interno++;
+			peso[nodo] = peso[a] + peso[b];
+			padre[a] = nodo;
+			padre[b] = nodo;
+		}
+		// Los padres estan siempre despues de sus hijos: se recorre de la raiz a las hojas.
+		int[] profundidad = aux.profundidad;
+		profundidad[2 * n - 2] = 0;
+		for (int nodo = 2 * n - 3; nodo >= 0; nodo--) {
+			profundidad[nodo] = profundidad[padre[nodo]] + 1;
+		}
+		for (int i = 0; i < n; i++) {
+			longitudes[simbolos[i]] = (byte) Math.min(profundidad[i], 255);
+		}
+		return n;
+	}
+
+	/*
+	 * Guarda en aux.simbolos los simbolos presentes ordenados por frecuencia creciente (y
+	 * por simbolo en caso de empate) y devuelve cuantos son. Si las frecuencias caben en
+	 * 55 bits se ordenan como un long[] de frecuencia << 8 | simbolo, sin objetos.
+	 */
+	private static int ordenarPorFrecuencia(final long[] freq, Auxiliares aux) {
+
+		int n = 0;
+		long maxima = 0;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			if (freq[s] > 0) n++;
+			maxima = Math.max(maxima, freq[s]);
+		}
+		int[] simbolos = aux.simbolos;
+		if (maxima < (1L << 55)) {
+			long[] claves = aux.claves;
+			for (int s = 0, i = 0; s < NUM_SIMBOLOS; s++) {
+				if (freq[s] > 0) claves[i++] = (freq[s] << 8) | s;
+			}
+			Arrays.sort(claves, 0, n);
+			for (int i = 0; i < n; i++) {
+				simbolos[i] = (int) (claves[i] & 0xff);
+			}
+			return n;
+		}
+		Integer[] orden = new Integer[n];
+		for (int s = 0, i = 0; s < NUM_SIMBOLOS; s++) {
+			if (freq[s] > 0) orden[i++] = s;
+		}
+		Arrays.sort(orden, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(freq[a], freq[b]);
+			}
+		});
+		for (int i = 0; i < n; i++) {
+			simbolos[i] = orden[i];
+		}
+		return n;
+	}
+
+	/*
+	 * Package-merge: la lista del nivel 0 son las hojas ordenadas por frecuencia; la de cada
+	 * nivel siguiente mezcla las hojas con los paquetes formados emparejando los elementos
+	 * consecutivos del nivel anterior. Tomando los 2n - 2 primeros elementos del ultimo
+	 * nivel, la longitud de cada simbolo es el numero de veces que aparece su hoja en ellos
+	 * (directamente o dentro de un paquete). Como en cada lista las hojas aparecen en
+	 * orden, basta con saber cuantas hojas y cuantos paquetes hay en cada prefijo.
+	 */
+	private static void calcularLongitudesLimitadas(long[] freq, int longitudMaxima, byte[] longitudes,
+			Auxiliares aux) {
+
+		// Hojas ordenadas por frecuencia (y por simbolo en caso de empate).
+		int n = ordenarPorFrecuencia(freq, aux);
+		int[] orden = aux.simbolos;
+		aux.prepararPackageMerge(longitudMaxima);
+		long[] hojas = aux.hojas;
+		for (int i = 0; i < n; i++) {
+			hojas[i] = freq[orden[i]];
+		}
+
+		// esPaquete[nivel * ancho + i]: si el elemento i de la lista del nivel es un paquete.
+		// Ninguna lista tiene mas de 2n - 1 elementos.
+		int ancho = 2 * n;
+		boolean[] esPaquete = aux.esPaquete;
+		Arrays.fill(esPaquete, 0, n, false);
+		long[] pesos = aux.pesos;
+		long[] siguiente = aux.pesosSiguiente;
+		System.arraycopy(hojas, 0, pesos, 0, n);
+		int numPesos = n;
+		for (int nivel = 1; nivel < longitudMaxima; nivel++) {
+			int numPaquetes = numPesos / 2;
+			int h = 0, p = 0;
+			for (int k = 0; k < n + numPaquetes; k++) {
+				long pesoPaquete = (p < numPaquetes) ? pesos[2 * p] + pesos[2 * p + 1] : Long.MAX_VALUE;
+				boolean paquete = !(h < n && hojas[h] <= pesoPaquete);
+				siguiente[k] = paquete ? pesoPaquete : hojas[h++];
+				esPaquete[nivel * ancho + k] = paquete;
+				if (paquete) p++;
+			}
+			long[] anteriores = pesos;
+			pesos = siguiente;
+			siguiente = anteriores;
+			numPesos = n + numPaquetes;
+		}
+
+		int[] longitudOrdenada = aux.longitudOrdenada;
+		Arrays.fill(longitudOrdenada, 0, n, 0);
+		int tomados = 2 * n - 2;
+		for (int nivel = longitudMaxima - 1; nivel >= 0; nivel--) {
+			int numHojas = 0;
+			for (int k = 0; k < tomados; k++) {
+				if (!esPaquete[nivel * ancho + k]) numHojas++;
+			}
+			for (int i = 0; i < numHojas; i++) {
+				longitudOrdenada[i]++;
+			}
+			tomados = 2 * (tomados - numHojas);
+		}
+		Arrays.fill(longitudes, (byte) 0);
+		for (int i = 0; i < n; i++) {
+			longitudes[orden[i]] = (byte) longitudOrdenada[i];
+		}
+	}
+
+	/**
+	 * Escribe la cabecera compacta de longitudes: el numero de bits de cada longitud
+	 * (3 bits), el numero de simbolos presentes (9 bits) y, para cada simbolo presente en
+	 * orden creciente, la distancia al anterior en codigo gamma de Elias seguida de su
+	 * longitud menos uno. Un alfabeto de simbolos consecutivos cuesta un bit por simbolo
+	 * ademas de su longitud.
+	 */
+	public void escribir(EscritorBinarioNIO escritor) {
+
+		int ancho = bitsNecesarios(longitudMaxima - 1);
+		int presentes = 0;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			if (longitudes[s] > 0) presentes++;
+		}
+		escritor.escribirBits(ancho, 3);
+		escritor.escribirBits(presentes, 9);
+		int anterior = -1;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			if (longitudes[s] > 0) {
+				escribirGamma(escritor, s - anterior);
+				escritor.escribirBits(longitudes[s] - 1, ancho);
+				anterior = s;
+			}
+		}
+	}
+
+	// Codigo gamma de Elias de n >= 1: tantos ceros como bits tiene n menos uno, y n.
+	private static void escribirGamma(EscritorBinarioNIO escritor, int n) {
+		int bits = bitsNecesarios(n);
+		escritor.escribirBits(0, bits - 1);
+		escritor.escribirBits(n, bits);
+	}
+
+	private static int leerGamma(LectorBinarioNIO lector) {
+		int ceros = 0;
+		while (!lector.leerBit()) {
+			if (++ceros > 8) throw new RuntimeException("Cabecera de longitudes no valida");
+		}
+		return (1 << ceros) | lector.leerBits(ceros);
+	}
+
+	/**
+	 * Lee una cabecera escrita con escribir() y reconstruye los codigos.
+	 *
+	 * @throws RuntimeException si las longitudes leidas no forman un codigo prefijo valido.
+	 */
+	public static CodigosCanonicos leer(LectorBinarioNIO lector) {
+
+		byte[] longitudes = new byte[NUM_SIMBOLOS];
+		leerLongitudes(lector, longitudes);
+		comprobarLongitudes(longitudes);
+		return new CodigosCanonicos(longitudes, null);
+	}
+
+	private static void leerLongitudes(LectorBinarioNIO lector, byte[] longitudes) {
+
+		int ancho = lector.leerBits(3);
+		int presentes = lector.leerBits(9);
+		if (ancho > bitsNecesarios(LONGITUD_MAXIMA - 1) || presentes > NUM_SIMBOLOS) {
+			throw new RuntimeException("Cabecera de longitudes no valida");
+		}
+		Arrays.fill(longitudes, (byte) 0);
+		int simbolo = -1;
+		for (int i = 0; i < presentes; i++) {
+			simbolo += leerGamma(lector);
+			if (simbolo >= NUM_SIMBOLOS) {
+				throw new RuntimeException("Cabecera de longitudes no valida");
+			}
+			longitudes[simbolo] = (byte) (lector.leerBits(ancho) + 1);
+		}
+	}
+
+	/**
+	 * Reconstruye los codigos a partir de sus longitudes.
+	 *
+	 * @throws RuntimeException si las longitudes no forman un codigo prefijo valido.
+	 */
+	public static CodigosCanonicos desdeLongitudes(byte[] longitudes) {
+		comprobarLongitudes(longitudes);
+		return new CodigosCanonicos(longitudes.clone(), null);
+	}
+
+	private static void comprobarLongitudes(byte[] longitudes) {
+
+		if (longitudes.length != NUM_SIMBOLOS) {
+			throw new RuntimeException("Se esperaban " + NUM_SIMBOLOS + " longitudes");
+		}
+		// Desigualdad de Kraft: suma de 2^-longitud <= 1.
+		long kraft = 0;
+		for (byte l : longitudes) {
+			if (l < 0 || l > LONGITUD_MAXIMA) {
+				throw new RuntimeException("Longitud de codigo no valida: " + l);
+			}
+			if (l > 0) kraft += 1L << (LONGITUD_MAXIMA - l);
+		}
+		if (kraft > (1L << LONGITUD_MAXIMA)) {
+			throw new RuntimeException("Las longitudes no forman un codigo prefijo");
+		}
+	}
+
+	/*
+	 * Tamano en bits de la cabecera que escribe escribir().
+	 */
+	long bitsCabecera() {
+		int ancho = bitsNecesarios(longitudMaxima - 1);
+		long bits = 12;
+		int anterior = -1;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			if (longitudes[s] > 0) {
+				bits += 2 * bitsNecesarios(s - anterior) - 1 + ancho;
+				anterior = s;
+			}
+		}
+		return bits;
+	}
+
+	/*
+	 * Tamano en bits de la trama de un mensaje con las frecuencias dadas, o Long.MAX_VALUE
+	 * si algun simbolo presente no tiene codigo.
+	 */
+	long bitsTrama(long[] frecuencias, int off) {
+		long bits = 0;
+		for (int s = 0; s < NUM_SIMBOLOS; s++) {
+			long f = frecuencias[off + s];
+			if (f > 0) {
+				if (longitudes[s] == 0) return Long.MAX_VALUE;
+				bits += f * longitudes[s];
+			}
+		}
+		return bits;
+	}
+
+	private static int bitsNecesarios(int valor) {
+		return (valor <= 0) ? 0 : 32 - Integer.numberOfLeadingZeros(valor);
+	}
+
+	/**
+	 * @return longitud del codigo del byte simbolo (0 si no tiene codigo).
+	 */
+	public int getLongitud(int simbolo) {
+		return longitudes[simbolo];
+	}
+
+	/**
+	 * @return bits del codigo del byte simbolo, alineados a la derecha.
+	 */
+	public int getCodigo(int simbolo) {
+		return codigos[simbolo];
+	}
+
+	/**
+	 * @return longitud del codigo mas largo.
+	 */
+	public int getLongitudMaxima() {
+		return longitudMaxima;
+	}
+}
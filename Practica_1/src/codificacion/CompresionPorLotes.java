@@ -0,0 +1,308 @@
+package codificacion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import entrada_salida.ReservaBuffers;
+
+/**************************************************************************************
+ *
+ *  CompresionPorLotes: Comprime o descomprime muchos archivos en una sola ejecucion,
+ *  repartidos entre un numero fijo de hilos. La entrada es un directorio (se recorre
+ *  entero) o un archivo de lista con una ruta por linea, indicado como @lista.txt. Cada
+ *  archivo se comprime con FlujoSalidaHuffman en dirSalida, con la misma ruta relativa
+ *  y la extension EXTENSION; al descomprimir se quita esa extension. Todos los flujos
+ *  toman sus buffers de la misma ReservaBuffers, asi que el coste por archivo es solo el
+ *  de comprimirlo. Los errores de un archivo no detienen el lote: se anotan en el
+ *  informe final. Cada archivo se registra en MonitorCompresion (lo hacen los flujos);
+ *  el informe resume el lote completo.
+ *
+ **************************************************************************************/
+
+public final class CompresionPorLotes {
+
+	public static final String EXTENSION = ".huf";
+	private static final int TAM_BUFFER = 1 << 16;
+
+	private CompresionPorLotes() {}
+
+	/**
+	 * Resultado agregado de un lote.
+	 */
+	public static final class Informe {
+		private final String operacion;
+		private int correctos;
+		private long bytesEntrada;
+		private long bytesSalida;
+		private long nanos;
+		private final List<String> errores = new ArrayList<String>();
+
+		Informe(String operacion) {
+			this.operacion = operacion;
+		}
+
+		public int getCorrectos() {
+			return correctos;
+		}
+
+		/**
+		 * @return Un mensaje ("ruta: causa") por cada archivo que no se pudo procesar.
+		 */
+		public List<String> getErrores() {
+			return Collections.unmodifiableList(errores);
+		}
+
+		public long getBytesEntrada() {
+			return bytesEntrada;
+		}
+
+		public long getBytesSalida() {
+			return bytesSalida;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return Resumen JSON en una sola linea.
+		 */
+		public String aJson() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"operacion\":\"").append(operacion).append('"');
+			sb.append(",\"archivos\":").append(correctos + errores.size());
+			sb.append(",\"correctos\":").append(correctos);
+			sb.append(",\"errores\":").append(errores.size());
+			sb.append(",\"bytesEntrada\":").append(bytesEntrada);
+			sb.append(",\"bytesSalida\":").append(bytesSalida);
+			sb.append(",\"nanosTotales\":").append(nanos);
+			sb.append(",\"megabytesPorSegundo\":").append(String.format(Locale.ROOT, "%.2f",
+					(nanos == 0) ? 0.0 : bytesEntrada / 1e6 / (nanos / 1e9)));
+			return sb.append('}').toString();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.ROOT, "%s: %d archivos correctos, %d con errores%n",
+					operacion, correctos, errores.size()));
+			sb.append(String.format(Locale.ROOT, "  %d bytes -> %d bytes (%.2f%%) en %.3f s, %.2f MB/s%n",
+					bytesEntrada, bytesSalida, (bytesEntrada == 0) ? 0.0 : 100.0 * bytesSalida / bytesEntrada,
+					nanos / 1e9, (nanos == 0) ? 0.0 : bytesEntrada / 1e6 / (nanos / 1e9)));
+			for (String error : errores) {
+				sb.append("  ERROR ").append(error).append(String.format("%n"));
+			}
+			return sb.toString();
+		}
+	}
+
+	/*
+	 * Resultado de un archivo: bytes leidos y escritos, o el error.
+	 */
+	private static final class Resultado {
+		final long entrada;
+		final long salida;
+		final String error;
+
+		Resultado(long entrada, long salida, String error) {
+			this.entrada = entrada;
+			this.salida = salida;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Comprime todos los archivos de entrada en dirSalida, usando un hilo por procesador.
+	 *
+	 * @param entrada Directorio o @archivo de lista.
+	 */
+	public static Informe comprimir(String entrada, String dirSalida) {
+		return procesar(entrada, dirSalida, true, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Descomprime todos los archivos de entrada en dirSalida, usando un hilo por procesador.
+	 *
+	 * @param entrada Directorio o @archivo de lista.
+	 */
+	public static Informe descomprimir(String entrada, String dirSalida) {
+		return procesar(entrada, dirSalida, false, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param comprimir true para comprimir, false para descomprimir.
+	 * @param hilos Numero de hilos de trabajo.
+	 */
+	public static Informe procesar(String entrada, String dirSalida, final boolean comprimir, int hilos) {
+
+		final long inicio = System.nanoTime();
+		Informe informe = new Informe(comprimir ? "comprimirLote" : "descomprimirLote");
+		final Path salida = Paths.get(dirSalida);
+		if (!entrada.startsWith("@") && salida.toAbsolutePath().normalize()
+				.startsWith(Paths.get(entrada).toAbsolutePath().normalize())) {
+			// Una ejecucion posterior recorreria y volveria a procesar su propia salida.
+			throw new RuntimeException("El directorio de salida " + dirSalida + " esta dentro de " + entrada);
+		}
+		List<Path[]> archivos;
+		try {
+			archivos = listar(entrada);
+		} catch (IOException e) {
+			throw new RuntimeException("No se pudo recorrer " + entrada, e);
+		}
+		final ReservaBuffers reserva = ReservaBuffers.compartida();
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		try {
+			ArrayDeque<Future<Resultado>> pendientes = new ArrayDeque<Future<Resultado>>();
+			Set<Path> salidas = new HashSet<Path>();
+			for (final Path[] archivo : archivos) {
+				final Path destino = rutaSalida(salida.resolve(archivo[1]), comprimir);
+				// Dos entradas con la misma salida (un archivo listado dos veces, o x y x.huf al
+				// descomprimir) la escribirian a la vez.
+				if (!salidas.add(destino.toAbsolutePath().normalize())) {
+					informe.errores.add(archivo[0] + ": ya hay otro archivo del lote con la salida " + destino);
+					continue;
+				}
+				pendientes.add(ejecutor.submit(new Callable<Resultado>() {
+					@Override
+					public Resultado call() {
+						return procesarArchivo(archivo[0], destino, comprimir, reserva);
+					}
+				}));
+				while (pendientes.size() >= 2 * hilos) {
+					anadir(informe, pendientes.poll());
+				}
+			}
+			while (!pendientes.isEmpty()) {
+				anadir(informe, pendientes.poll());
+			}
+		} finally {
+			ejecutor.shutdownNow();
+		}
+		informe.nanos = System.nanoTime() - inicio;
+		return informe;
+	}
+
+	/*
+	 * Pares (archivo de entrada, ruta relativa de salida sin la extension cambiada). En una
+	 * lista la ruta de salida es la relativa al directorio comun de todos los archivos, para
+	 * que dos archivos con el mismo nombre en directorios distintos no se pisen.
+	 */
+	private static List<Path[]> listar(String entrada) throws IOException {
+		final List<Path[]> archivos = new ArrayList<Path[]>();
+		if (entrada.startsWith("@")) {
+			List<Path> lista = new ArrayList<Path>();
+			Path comun = null;
+			for (String linea : Files.readAllLines(Paths.get(entrada.substring(1)), StandardCharsets.UTF_8)) {
+				if (linea.trim().isEmpty()) continue;
+				Path archivo = Paths.get(linea.trim());
+				Path padre = archivo.toAbsolutePath().normalize().getParent();
+				lista.add(archivo);
+				comun = (comun == null) ? padre : prefijoComun(comun, padre);
+			}
+			for (Path archivo : lista) {
+				archivos.add(new Path[] {archivo, comun.relativize(archivo.toAbsolutePath().normalize())});
+			}
+			return archivos;
+		}
+		final Path raiz = Paths.get(entrada);
+		Files.walkFileTree(raiz, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path archivo, BasicFileAttributes atributos) {
+				if (atributos.isRegularFile()) {
+					archivos.add(new Path[] {archivo, raiz.relativize(archivo)});
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return archivos;
+	}
+
+	/*
+	 * Directorio mas largo que contiene a a y a b.
+	 */
+	private static Path prefijoComun(Path a, Path b) {
+		while (!b.startsWith(a)) {
+			a = a.getParent();
+		}
+		return a;
+	}
+
+	/*
+	 * Ruta final de salida: se anade EXTENSION al comprimir y se quita al descomprimir.
+	 */
+	private static Path rutaSalida(Path salida, boolean comprimir) {
+		String nombre = salida.getFileName().toString();
+		if (comprimir) {
+			return salida.resolveSibling(nombre + EXTENSION);
+		} else if (nombre.endsWith(EXTENSION) && nombre.length() > EXTENSION.length()) {
+			return salida.resolveSibling(nombre.substring(0, nombre.length() - EXTENSION.length()));
+		}
+		return salida;
+	}
+
+	private static Resultado procesarArchivo(Path entrada, Path salida, boolean comprimir, ReservaBuffers reserva) {
+		byte[] buffer = reserva.obtener(TAM_BUFFER);
+		try {
+			if (salida.getParent() != null) Files.createDirectories(salida.getParent());
+			try (InputStream in = comprimir ? Files.newInputStream(entrada)
+							: new FlujoEntradaHuffman(Files.newInputStream(entrada), reserva);
+					OutputStream out = comprimir
+							? new FlujoSalidaHuffman(Files.newOutputStream(salida), FlujoSalidaHuffman.TAM_BLOQUE, reserva)
+							: Files.newOutputStream(salida)) {
+				int leidos;
+				while ((leidos = in.read(buffer)) >= 0) {
+					out.write(buffer, 0, leidos);
+				}
+			}
+			return new Resultado(Files.size(entrada), Files.size(salida), null);
+		} catch (IOException | RuntimeException e) {
+			// No se deja en dirSalida un archivo a medias.
+			try {
+				Files.deleteIfExists(salida);
+			} catch (IOException ignorada) {
+			}
+			return new Resultado(0, 0, entrada + ": " + e);
+		} finally {
+			reserva.devolver(buffer);
+		}
+	}
+
+	private static void anadir(Informe informe, Future<Resultado> tarea) {
+		Resultado r;
+		try {
+			r = tarea.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Lote interrumpido", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		if (r.error != null) {
+			informe.errores.add(r.error);
+		} else {
+			informe.correctos++;
+			informe.bytesEntrada += r.entrada;
+			informe.bytesSalida += r.salida;
+		}
+	}
+}
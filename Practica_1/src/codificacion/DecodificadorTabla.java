@@ -0,0 +1,191 @@
+package codificacion;
+
+import java.util.Arrays;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+import estructuras_datos.ArbolHuffman;
+
+/**************************************************************************************
+ *
+ *  DecodificadorTabla: Decodificador de Huffman basado en tablas. El arbol (o los
+ *  codigos canonicos) se aplana en arrays de enteros y se precalcula una tabla indexada
+ *  por los siguientes BITS_TABLA bits de la trama, que se consultan de una vez con
+ *  LectorBinarioNIO.verBits(), de forma que cada consulta devuelve un simbolo completo
+ *  y su longitud. Los codigos mas largos que BITS_TABLA continuan recorriendo el arbol
+ *  aplanado a partir del nodo que indica la tabla.
+ *
+ **************************************************************************************/
+
+public class DecodificadorTabla {
+
+	// Numero de bits con los que se indexa la tabla principal.
+	private static final int BITS_TABLA = 10;
+	// Tamano del buffer de salida.
+	private static final int TAM_BUFFER = 1 << 16;
+
+	// Arbol aplanado: hijos[2n] e hijos[2n+1] son los hijos izquierdo y derecho del nodo
+	// interno n. Un valor > 0 es otro nodo interno; un valor < 0 es una hoja (~simbolo).
+	// La raiz es siempre el nodo 0, asi que un hijo 0 indica que no hay codigo por ahi.
+	private int[] hijos;
+	private final int raiz;
+	private int numNodos;
+
+	// Entrada > 0: (simbolo << 4) | longitud del codigo. Entrada < 0: ~nodo desde el que
+	// continuar la decodificacion tras consumir BITS_TABLA bits. Entrada 0: codigo no valido.
+	private final int[] tabla;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param arbol Arbol de Huffman con el que se codifico la trama.
+	 */
+	public DecodificadorTabla(ArbolHuffman arbol) {
+		hijos = new int[2 * Math.max(contarInternos(arbol), 1)];
+		raiz = aplanar(arbol);
+		tabla = (raiz < 0) ? null : construirTabla(new int[1 << BITS_TABLA]);
+	}
+
+	/**
+	 * Constructor a partir de codigos canonicos: los codigos se insertan directamente en
+	 * el arbol aplanado, sin construir objetos ArbolHuffman.
+	 *
+	 * @param codigos Codigos canonicos con los que se codifico la trama.
+	 */
+	public DecodificadorTabla(CodigosCanonicos codigos) {
+		hijos = new int[0];
+		raiz = 0;
+		tabla = new int[1 << BITS_TABLA];
+		recargar(codigos);
+	}
+
+	/*
+	 * Sustituye los codigos de un decodificador creado a partir de codigos canonicos,
+	 * reutilizando sus tablas (el arbol aplanado solo se reserva de nuevo si no cabe).
+	 */
+	void recargar(CodigosCanonicos codigos) {
+		int bitsTotales = 0;
+		for (int s = 0; s < CodigosCanonicos.NUM_SIMBOLOS; s++) {
+			bitsTotales += codigos.getLongitud(s);
+		}
+		if (hijos.length < 2 * Math.max(bitsTotales, 1)) {
+			hijos = new int[2 * Math.max(bitsTotales, 1)];
+		} else {
+			Arrays.fill(hijos, 0, 2 * numNodos, 0);
+		}
+		numNodos = 1;
+		for (int s = 0; s < CodigosCanonicos.NUM_SIMBOLOS; s++) {
+			if (codigos.getLongitud(s) > 0) {
+				insertar(codigos.getCodigo(s), codigos.getLongitud(s), s);
+			}
+		}
+		construirTabla(tabla);
+	}
+
+	private void insertar(int codigo, int longitud, int simbolo) {
+		int nodo = 0;
+		for (int b = longitud - 1; b > 0; b--) {
+			int hijo = 2 * nodo + ((codigo >>> b) & 1);
+			if (hijos[hijo] == 0) hijos[hijo] = numNodos++;
+			nodo = hijos[hijo];
+		}
+		hijos[2 * nodo + (codigo & 1)] = ~simbolo;
+	}
+
+	private int contarInternos(ArbolHuffman arbol) {
+		if (arbol.esHoja()) return 0;
+		return 1 + contarInternos(arbol.getIzquierdo()) + contarInternos(arbol.getDerecho());
+	}
+
+	private int aplanar(ArbolHuffman arbol) {
+		if (arbol.esHoja()) return ~(arbol.getSimbolo() & 0xff);
+		int nodo = numNodos++;
+		hijos[2 * nodo] = aplanar(arbol.getIzquierdo());
+		hijos[2 * nodo + 1] = aplanar(arbol.getDerecho());
+		return nodo;
+	}
+
+	private int[] construirTabla(int[] t) {
+		for (int indice = 0; indice < t.length; indice++) {
+			int nodo = raiz;
+			int bit = 0;
+			while (nodo >= 0 && bit < BITS_TABLA) {
+				nodo = hijos[2 * nodo + ((indice >>> (BITS_TABLA - 1 - bit)) & 1)];
+				bit++;
+				if (nodo == 0) break;
+			}
+			if (nodo < 0) t[indice] = (~nodo << 4) | bit;
+			else if (nodo > 0) t[indice] = ~nodo;
+			else t[indice] = 0;
+		}
+		return t;
+	}
+
+	/**
+	 * Decodifica numSimbolos simbolos leyendo la trama de lector y escribiendo el resultado
+	 * en escritor por bloques.
+	 *
+	 * @param lector Flujo posicionado al comienzo de la trama codificada.
+	 * @param escritor Flujo donde se escriben los simbolos decodificados.
+	 * @param numSimbolos Numero de simbolos (bytes) del mensaje original.
+	 * @throws RuntimeException si la trama se acaba antes de decodificar todos los simbolos.
+	 */
+	public void decodificar(LectorBinarioNIO lector, EscritorBinarioNIO escritor, long numSimbolos) {
+
+		byte[] salida = new byte[TAM_BUFFER];
+		for (long restantes = numSimbolos; restantes > 0; restantes -= salida.length) {
+			int n = (int) Math.min(restantes, salida.length);
+			decodificar(lector, salida, 0, n);
+			escritor.escribirBytes(salida, 0, n);
+		}
+	}
+
+	/**
+	 * Decodifica numSimbolos simbolos leyendo la trama de lector y guardandolos en salida.
+	 *
+	 * @param lector Flujo posicionado al comienzo de la trama codificada.
+	 * @param salida Array donde se guardan los simbolos decodificados.
+	 * @param off Posicion de salida donde se guarda el primer simbolo.
+	 * @param numSimbolos Numero de simbolos a decodificar.
+	 * @throws RuntimeException si la trama se acaba antes de decodificar todos los simbolos.
+	 */
+	public void decodificar(LectorBinarioNIO lector, byte[] salida, int off, int numSimbolos) {
+
+		// Arbol de una sola hoja: todos los codigos estan vacios.
+		if (raiz < 0) {
+			Arrays.fill(salida, off, off + numSimbolos, (byte) ~raiz);
+			return;
+		}
+		for (int i = off; i < off + numSimbolos; i++) {
+			salida[i] = (byte) decodificarSimbolo(lector);
+		}
+	}
+
+	/**
+	 * Decodifica un solo simbolo de la trama. Permite alternar entre varios decodificadores
+	 * sobre el mismo flujo, como hace el modelo de contexto de HuffmanOrden1.
+	 *
+	 * @return El simbolo decodificado (0 a 255).
+	 * @throws RuntimeException si la trama no contiene un codigo valido.
+	 */
+	public int decodificarSimbolo(LectorBinarioNIO lector) {
+
+		if (raiz < 0) return ~raiz;
+		int entradaTabla = tabla[lector.verBits(BITS_TABLA)];
+		if (entradaTabla > 0) {
+			lector.descartarBits(entradaTabla & 0xf);
+			return entradaTabla >>> 4;
+		}
+		if (entradaTabla == 0) {
+			throw new RuntimeException("Codigo no valido en la trama");
+		}
+		// Codigo mas largo que BITS_TABLA: se sigue por el arbol bit a bit.
+		lector.descartarBits(BITS_TABLA);
+		int nodo = ~entradaTabla;
+		while (nodo >= 0) {
+			nodo = hijos[2 * nodo + lector.leerBits(1)];
+			if (nodo == 0) throw new RuntimeException("Codigo no valido en la trama");
+		}
+		return ~nodo;
+	}
+}
@@ -0,0 +1,183 @@
+package codificacion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  DiccionarioHuffman: Codigos canonicos fijos, entrenados una vez sobre un corpus y
+ *  compartidos por muchos mensajes pequenos. Cada mensaje se comprime sin cabecera de
+ *  arbol ni pasada de frecuencias; solo lleva su longitud:
+ *
+ *  	longitud (varint) | trama (alineada a byte)
+ *
+ *  Todos los bytes reciben codigo al entrenar, aunque no aparezcan en el corpus, de modo
+ *  que cualquier mensaje se puede comprimir. Los diccionarios cargados de disco se
+ *  guardan en una cache y se reutilizan entre llamadas; las instancias son inmutables y
+ *  se pueden usar desde varios hilos a la vez.
+ *
+ *  Formato del archivo de diccionario:  MAGIA (32) | cabecera de longitudes
+ *
+ **************************************************************************************/
+
+public final class DiccionarioHuffman {
+
+	// "HUFD"
+	public static final int MAGIA = 0x48554644;
+
+	// Diccionarios cargados, por ruta absoluta.
+	private static final ConcurrentMap<String, DiccionarioHuffman> CACHE =
+			new ConcurrentHashMap<String, DiccionarioHuffman>();
+
+	private final CodigosCanonicos codigos;
+	private final DecodificadorTabla decodificador;
+
+	private DiccionarioHuffman(CodigosCanonicos codigos) {
+		this.codigos = codigos;
+		this.decodificador = new DecodificadorTabla(codigos);
+	}
+
+	/**
+	 * Entrena un diccionario con las frecuencias conjuntas de los archivos del corpus.
+	 *
+	 * @param corpus Rutas de los archivos de ejemplo.
+	 */
+	public static DiccionarioHuffman entrenar(String... corpus) {
+		EstadisticasCompresion medidas = new EstadisticasCompresion("entrenarDiccionario");
+		long[] frecuencias = new long[CodigosCanonicos.NUM_SIMBOLOS];
+		Arrays.fill(frecuencias, 1);
+		long bytesCorpus = 0;
+		for (String filePath : corpus) {
+			long[] f = Frecuencias.contar(filePath);
+			for (int s = 0; s < frecuencias.length; s++) {
+				frecuencias[s] += f[s];
+			}
+			bytesCorpus += Frecuencias.total(f);
+		}
+		medidas.finEtapa("frecuencias");
+		CodigosCanonicos codigos = CodigosCanonicos.desdeFrecuencias(frecuencias);
+		medidas.finEtapa("codigos");
+		medidas.registrarCodigo(frecuencias, codigos);
+		medidas.setBytesEntrada(bytesCorpus);
+		MonitorCompresion.instancia().registrar(medidas);
+		return new DiccionarioHuffman(codigos);
+	}
+
+	/**
+	 * Guarda el diccionario en filePath y lo deja en la cache para esa ruta.
+	 */
+	public void guardar(String filePath) {
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(filePath);
+		escritor.escribirEntero(MAGIA);
+		codigos.escribir(escritor);
+		escritor.cerrarFlujo();
+		CACHE.put(clave(filePath), this);
+	}
+
+	/**
+	 * Devuelve el diccionario guardado en filePath. Solo se lee del disco la primera vez;
+	 * las siguientes llamadas con la misma ruta devuelven la instancia en cache.
+	 *
+	 * @throws RuntimeException si el archivo no existe o no es un diccionario.
+	 */
+	public static DiccionarioHuffman cargar(String filePath) {
+		String clave = clave(filePath);
+		DiccionarioHuffman diccionario = CACHE.get(clave);
+		if (diccionario == null) {
+			LectorBinarioNIO lector = new LectorBinarioNIO(filePath);
+			try {
+				if (lector.leerEntero() != MAGIA) {
+					throw new RuntimeException("El archivo no es un diccionario de Huffman: " + filePath);
+				}
+				diccionario = new DiccionarioHuffman(CodigosCanonicos.leer(lector));
+			} finally {
+				lector.cerrarFlujo();
+			}
+			DiccionarioHuffman anterior = CACHE.putIfAbsent(clave, diccionario);
+			if (anterior != null) diccionario = anterior;
+		}
+		return diccionario;
+	}
+
+	private static String clave(String filePath) {
+		return Paths.get(filePath).toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Comprime datos[off, off + len) con los codigos del diccionario.
+	 */
+	public byte[] comprimir(byte[] datos, int off, int len) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirConDiccionario");
+		byte[] longitudes = codigos.longitudes;
+		int[] tablaCodigos = codigos.codigos;
+		ByteArrayOutputStream salida = new ByteArrayOutputStream(len / 2 + 8);
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(Channels.newChannel(salida));
+		Varint.escribir(escritor, len);
+		for (int i = off; i < off + len; i++) {
+			int simbolo = datos[i] & 0xff;
+			escritor.escribirBits(tablaCodigos[simbolo], longitudes[simbolo]);
+		}
+		escritor.cerrarFlujo();
+		medidas.finEtapa("codificacion");
+		medidas.setBytesEntrada(len);
+		medidas.setBytesSalida(salida.size());
+		MonitorCompresion.instancia().registrar(medidas);
+		return salida.toByteArray();
+	}
+
+	public byte[] comprimir(byte[] datos) {
+		return comprimir(datos, 0, datos.length);
+	}
+
+	/**
+	 * Descomprime un mensaje generado con comprimir() por este mismo diccionario.
+	 *
+	 * @throws RuntimeException si el mensaje esta incompleto o no corresponde al diccionario.
+	 */
+	public byte[] descomprimir(byte[] comprimido, int off, int len) {
+		EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimirConDiccionario");
+		LectorBinarioNIO lector = new LectorBinarioNIO(ByteBuffer.wrap(comprimido, off, len));
+		byte[] original = new byte[Varint.leer(lector)];
+		decodificador.decodificar(lector, original, 0, original.length);
+		medidas.finEtapa("decodificacion");
+		medidas.setBytesEntrada(len);
+		medidas.setBytesSalida(original.length);
+		MonitorCompresion.instancia().registrar(medidas);
+		return original;
+	}
+
+	public byte[] descomprimir(byte[] comprimido) {
+		return descomprimir(comprimido, 0, comprimido.length);
+	}
+
+	/**
+	 * Comprime el archivo filePathIn en filePathOut con este diccionario. Pensado para
+	 * mensajes pequenos: el archivo se carga entero en memoria.
+	 */
+	public void comprimir(String filePathIn, String filePathOut) {
+		try {
+			Files.write(Paths.get(filePathOut), comprimir(Files.readAllBytes(Paths.get(filePathIn))));
+		} catch (IOException e) {
+			throw new RuntimeException("Error de entrada/salida comprimiendo " + filePathIn, e);
+		}
+	}
+
+	public void descomprimir(String filePathIn, String filePathOut) {
+		try {
+			Files.write(Paths.get(filePathOut), descomprimir(Files.readAllBytes(Paths.get(filePathIn))));
+		} catch (IOException e) {
+			throw new RuntimeException("Error de entrada/salida descomprimiendo " + filePathIn, e);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package codificacion;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**************************************************************************************
+ *
+ *  EstadisticasCompresion: Medidas de una compresion o descompresion: nanosegundos de
+ *  cada etapa (en el orden en que se ejecutan), bytes de entrada y de salida, entropia
+ *  de orden 0 de la entrada frente a los bits por simbolo conseguidos en la trama, y
+ *  profundidad del arbol (longitud del codigo mas largo). aJson() devuelve un resumen
+ *  en una linea para procesarlo con otras herramientas; MonitorCompresion acumula las
+ *  de todas las operaciones y las publica por JMX.
+ *
+ **************************************************************************************/
+
+public class EstadisticasCompresion {
+
+	private final String operacion;
+	private final Map<String, Long> etapas = new LinkedHashMap<String, Long>();
+	private long inicioEtapa;
+	private long bytesEntrada;
+	private long bytesSalida;
+	private long bitsTrama = -1;
+	private long numSimbolos;
+	private double entropia = Double.NaN;
+	private int profundidad = -1;
+
+	/**
+	 * @param operacion Nombre de la operacion medida (por ejemplo, "comprimir").
+	 */
+	public EstadisticasCompresion(String operacion) {
+		this.operacion = operacion;
+		this.inicioEtapa = System.nanoTime();
+	}
+
+	/**
+	 * Cierra la etapa en curso con el nombre dado: su duracion es el tiempo transcurrido
+	 * desde el final de la etapa anterior (o desde la creacion de este objeto).
+	 */
+	public void finEtapa(String nombre) {
+		long ahora = System.nanoTime();
+		Long anterior = etapas.get(nombre);
+		etapas.put(nombre, (anterior == null ? 0 : anterior) + (ahora - inicioEtapa));
+		inicioEtapa = ahora;
+	}
+
+	/**
+	 * Empieza la siguiente etapa ahora: el tiempo transcurrido desde el final de la anterior
+	 * (por ejemplo, esperando datos de la entrada) no se atribuye a ninguna.
+	 */
+	public void iniciarEtapa() {
+		inicioEtapa = System.nanoTime();
+	}
+
+	/**
+	 * Registra las propiedades de unos codigos canonicos, como registrarCodigo(frecuencias,
+	 * longitudes).
+	 */
+	public void registrarCodigo(long[] frecuencias, CodigosCanonicos codigos) {
+		int[] longitudes = new int[CodigosCanonicos.NUM_SIMBOLOS];
+		for (int s = 0; s < longitudes.length; s++) {
+			longitudes[s] = codigos.getLongitud(s);
+		}
+		registrarCodigo(frecuencias, longitudes);
+	}
+
+	/**
+	 * Registra las propiedades del codigo usado: entropia de orden 0 de frecuencias, bits
+	 * de la trama y longitud maxima de los codigos.
+	 *
+	 * @param frecuencias Frecuencia de cada valor de byte.
+	 * @param longitudes Longitud del codigo de cada valor de byte.
+	 */
+	public void registrarCodigo(long[] frecuencias, int[] longitudes) {
+		numSimbolos = 0;
+		bitsTrama = 0;
+		profundidad = 0;
+		for (int s = 0; s < frecuencias.length; s++) {
+			numSimbolos += frecuencias[s];
+			bitsTrama += frecuencias[s] * longitudes[s];
+			if (frecuencias[s] > 0) profundidad = Math.max(profundidad, longitudes[s]);
+		}
+		entropia = entropia(frecuencias);
+	}
+
+	/**
+	 * @return Entropia de orden 0 en bits por simbolo: -suma(p * log2(p)).
+	 */
+	public static double entropia(long[] frecuencias) {
+		double total = Frecuencias.total(frecuencias);
+		if (total == 0) return 0;
+		double h = 0;
+		for (long f : frecuencias) {
+			if (f > 0) {
+				double p = f / total;
+				h -= p * Math.log(p);
+			}
+		}
+		return h / Math.log(2);
+	}
+
+	public void setBytesEntrada(long bytesEntrada) {
+		this.bytesEntrada = bytesEntrada;
+	}
+
+	public void setBytesSalida(long bytesSalida) {
+		this.bytesSalida = bytesSalida;
+	}
+
+	public String getOperacion() {
+		return operacion;
+	}
+
+	/**
+	 * @return Duracion de cada etapa en nanosegundos, en orden de ejecucion.
+	 */
+	public Map<String, Long> getEtapas() {
+		return new LinkedHashMap<String, Long>(etapas);
+	}
+
+	public long getNanosTotales() {
+		long total = 0;
+		for (long n : etapas.values()) total += n;
+		return total;
+	}
+
+	public long getBytesEntrada() {
+		return bytesEntrada;
+	}
+
+	public long getBytesSalida() {
+		return bytesSalida;
+	}
+
+	/**
+	 * @return Entropia de orden 0 de la entrada en bits por simbolo; NaN si no se conoce.
+	 */
+	public double getEntropia() {
+		return entropia;
+	}
+
+	/**
+	 * @return Bits por simbolo de la trama, sin cabeceras; NaN si no se conoce.
+	 */
+	public double getBitsPorSimbolo() {
+		return (bitsTrama < 0 || numSimbolos == 0) ? Double.NaN : (double) bitsTrama / numSimbolos;
+	}
+
+	/**
+	 * @return Longitud del codigo mas largo; -1 si no se conoce.
+	 */
+	public int getProfundidad() {
+		return profundidad;
+	}
+
+	/**
+	 * @return Resumen en JSON en una sola linea.
+	 */
+	public String aJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"operacion\":\"").append(operacion).append('"');
+		sb.append(",\"etapasNanos\":{");
+		boolean primera = true;
+		for (Map.Entry<String, Long> etapa : etapas.entrySet()) {
+			if (!primera) sb.append(',');
+			sb.append('"').append(etapa.getKey()).append("\":").append(etapa.getValue());
+			primera = false;
+		}
+		sb.append("},\"nanosTotales\":").append(getNanosTotales());
+		sb.append(",\"bytesEntrada\":").append(bytesEntrada);
+		sb.append(",\"bytesSalida\":").append(bytesSalida);
+		if (!Double.isNaN(entropia)) {
+			sb.append(",\"entropia\":").append(numero(entropia));
+			sb.append(",\"bitsPorSimbolo\":").append(numero(getBitsPorSimbolo()));
+			sb.append(",\"profundidadArbol\":").append(profundidad);
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String numero(double valor) {
+		return String.format(Locale.ROOT, "%.4f", valor);
+	}
+
+	@Override
+	public String toString() {
+		return aJson();
+	}
+}
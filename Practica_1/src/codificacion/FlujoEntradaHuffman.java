@@ -0,0 +1,159 @@
+package codificacion;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import entrada_salida.LectorBinarioNIO;
+import entrada_salida.ReservaBuffers;
+
+/**************************************************************************************
+ *
+ *  FlujoEntradaHuffman: InputStream que descomprime un flujo generado con
+ *  FlujoSalidaHuffman. Cada bloque se lee entero del flujo subyacente, se comprueba su
+ *  CRC32 y se descomprime en un buffer de la reserva, del que se sirven las lecturas.
+ *  No lee mas alla del final del flujo comprimido, asi que el flujo subyacente se puede
+ *  seguir usando despues. Al llegar a ese final se registran sus medidas en
+ *  MonitorCompresion. No es seguro para varios hilos.
+ *
+ **************************************************************************************/
+
+public class FlujoEntradaHuffman extends InputStream {
+
+	// Tamano maximo de bloque que se acepta, para no reservar memoria por un dato danado.
+	private static final int TAM_BLOQUE_MAXIMO = 1 << 30;
+
+	private final DataInputStream entrada;
+	private final ReservaBuffers reserva;
+	private byte[] comprimido;
+	private byte[] original;
+	private int posicion;
+	private int disponibles;
+	private final boolean conTipos;
+	private final EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimirFlujo");
+	private long bytesEntrada = 4;
+	private long bytesSalida;
+	private boolean fin;
+	private boolean cerrado;
+
+	/**
+	 * Constructor con la reserva compartida.
+	 */
+	public FlujoEntradaHuffman(InputStream entrada) throws IOException {
+		this(entrada, ReservaBuffers.compartida());
+	}
+
+	/**
+	 * Constructor. Lee y comprueba la magia del formato.
+	 *
+	 * @param reserva Reserva de la que se toman los buffers.
+	 * @throws IOException si entrada no empieza por un flujo de FlujoSalidaHuffman.
+	 */
+	public FlujoEntradaHuffman(InputStream entrada, ReservaBuffers reserva) throws IOException {
+		this.entrada = new DataInputStream(entrada);
+		this.reserva = reserva;
+		int magia = this.entrada.readInt();
+		if (magia != FlujoSalidaHuffman.MAGIA && magia != FlujoSalidaHuffman.MAGIA_V1) {
+			throw new IOException("El flujo no esta comprimido con FlujoSalidaHuffman");
+		}
+		this.conTipos = (magia == FlujoSalidaHuffman.MAGIA);
+		this.original = reserva.obtener(FlujoSalidaHuffman.TAM_BLOQUE);
+		this.comprimido = reserva.obtener(FlujoSalidaHuffman.TAM_BLOQUE);
+	}
+
+	@Override
+	public int read() throws IOException {
+		comprobarAbierto();
+		if (posicion == disponibles && !cargarBloque()) return -1;
+		return original[posicion++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] destino, int off, int len) throws IOException {
+		comprobarAbierto();
+		if (off < 0 || len < 0 || off + len > destino.length) throw new IndexOutOfBoundsException();
+		if (len == 0) return 0;
+		if (posicion == disponibles && !cargarBloque()) return -1;
+		int n = Math.min(len, disponibles - posicion);
+		System.arraycopy(original, posicion, destino, off, n);
+		posicion += n;
+		return n;
+	}
+
+	/**
+	 * @return Bytes que se pueden leer sin leer otro bloque del flujo subyacente.
+	 */
+	@Override
+	public int available() throws IOException {
+		comprobarAbierto();
+		return disponibles - posicion;
+	}
+
+	/*
+	 * Lee y descomprime el siguiente bloque.
+	 *
+	 * @return false si se ha llegado al final del flujo comprimido.
+	 */
+	private boolean cargarBloque() throws IOException {
+		if (fin) return false;
+		int tamOriginal = Varint.leer(entrada);
+		if (tamOriginal == 0) {
+			fin = true;
+			medidas.setBytesEntrada(bytesEntrada + 1);
+			medidas.setBytesSalida(bytesSalida);
+			MonitorCompresion.instancia().registrar(medidas);
+			return false;
+		}
+		int tamComprimido = Varint.leer(entrada);
+		int suma = entrada.readInt();
+		if (tamOriginal > TAM_BLOQUE_MAXIMO || tamComprimido > TAM_BLOQUE_MAXIMO) {
+			throw new IOException("Bloque comprimido no valido");
+		}
+		comprimido = asegurar(comprimido, tamComprimido);
+		original = asegurar(original, tamOriginal);
+		entrada.readFully(comprimido, 0, tamComprimido);
+		medidas.iniciarEtapa();
+		try {
+			LectorBinarioNIO lector = new LectorBinarioNIO(ByteBuffer.wrap(comprimido, 0, tamComprimido));
+			HuffmanPorBloques.decodificarBloque(lector, original, 0, tamOriginal, conTipos);
+		} catch (RuntimeException e) {
+			throw new IOException("Bloque comprimido no valido", e);
+		}
+		if (HuffmanPorBloques.crc32(original, 0, tamOriginal) != suma) {
+			throw new IOException("CRC32 incorrecto: flujo comprimido danado");
+		}
+		medidas.finEtapa("decodificacion");
+		bytesEntrada += Varint.tamano(tamOriginal) + Varint.tamano(tamComprimido) + 4 + tamComprimido;
+		bytesSalida += tamOriginal;
+		posicion = 0;
+		disponibles = tamOriginal;
+		return true;
+	}
+
+	// Despues de close() los buffers ya estan en la reserva y no se pueden usar.
+	private void comprobarAbierto() throws IOException {
+		if (cerrado) throw new IOException("Flujo cerrado");
+	}
+
+	private byte[] asegurar(byte[] buffer, int tamano) {
+		if (buffer.length >= tamano) return buffer;
+		reserva.devolver(buffer);
+		return reserva.obtener(tamano);
+	}
+
+	/**
+	 * Devuelve los buffers a la reserva y cierra el flujo subyacente.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (cerrado) return;
+		cerrado = true;
+		reserva.devolver(original);
+		reserva.devolver(comprimido);
+		original = null;
+		comprimido = null;
+		posicion = disponibles = 0;
+		entrada.close();
+	}
+}
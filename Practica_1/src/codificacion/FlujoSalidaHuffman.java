@@ -0,0 +1,210 @@
+package codificacion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.ReservaBuffers;
+
+/**************************************************************************************
+ *
+ *  FlujoSalidaHuffman: OutputStream que comprime con Huffman lo que se escribe en el
+ *  y lo pasa al flujo de salida subyacente. Los datos se agrupan en bloques de como
+ *  mucho tamBloque bytes, cada uno codificado como en HuffmanPorBloques (con sus propios
+ *  codigos canonicos, o como byte constante o rachas si ocupa menos), y cada bloque se
+ *  escribe en cuanto se llena o se llama a flush(). Formato del flujo:
+ *
+ *  	MAGIA (32) | bloque | bloque | ... | 0 (varint)
+ *  	bloque = tamOriginal (varint > 0) | tamComprimido (varint) | CRC32 (32)
+ *  	         | tipo de bloque (8) | datos del bloque (alineado a byte)
+ *
+ *  Los flujos con MAGIA_V1 no llevan el tipo de bloque: todos son de Huffman.
+ *
+ *  Los buffers se piden a una ReservaBuffers al crear el flujo y se le devuelven al
+ *  cerrarlo, asi que crear un flujo por peticion no reserva memoria en regimen estable.
+ *  Al terminar el flujo se registran sus medidas en MonitorCompresion. No es seguro para
+ *  varios hilos.
+ *
+ **************************************************************************************/
+
+public class FlujoSalidaHuffman extends OutputStream {
+
+	// "HUFT"
+	public static final int MAGIA = 0x48554654;
+	// "HUFS": flujos sin tipo de bloque, que solo se leen.
+	public static final int MAGIA_V1 = 0x48554653;
+	// Tamano de bloque por defecto.
+	public static final int TAM_BLOQUE = 1 << 16;
+	private static final int TAM_BUFFER_ESCRITOR = 1 << 13;
+
+	private final OutputStream salida;
+	private final ReservaBuffers reserva;
+	private final byte[] bloque;
+	private final byte[] bufferEscritor;
+	private final Acumulador comprimido;
+	private final EscritorBinarioNIO escritor;
+	private final EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirFlujo");
+	private long bytesEntrada;
+	private long bytesSalida = 4;
+	private int pendientes;
+	private boolean terminado;
+	private boolean cerrado;
+
+	/*
+	 * Canal que guarda lo escrito en un array de la reserva, que crece si hace falta.
+	 */
+	private static final class Acumulador implements WritableByteChannel {
+		byte[] datos;
+		int tamano;
+		private final ReservaBuffers reserva;
+
+		Acumulador(ReservaBuffers reserva, int capacidad) {
+			this.reserva = reserva;
+			this.datos = reserva.obtener(capacidad);
+		}
+
+		@Override
+		public int write(ByteBuffer origen) {
+			int n = origen.remaining();
+			if (tamano + n > datos.length) {
+				byte[] mayor = reserva.obtener(Math.max(2 * datos.length, tamano + n));
+				System.arraycopy(datos, 0, mayor, 0, tamano);
+				reserva.devolver(datos);
+				datos = mayor;
+			}
+			origen.get(datos, tamano, n);
+			tamano += n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {}
+	}
+
+	/**
+	 * Constructor con el tamano de bloque por defecto y la reserva compartida.
+	 */
+	public FlujoSalidaHuffman(OutputStream salida) throws IOException {
+		this(salida, TAM_BLOQUE, ReservaBuffers.compartida());
+	}
+
+	/**
+	 * Constructor. Escribe la magia del formato en salida.
+	 *
+	 * @param tamBloque Tamano maximo de cada bloque en bytes.
+	 * @param reserva Reserva de la que se toman los buffers.
+	 */
+	public FlujoSalidaHuffman(OutputStream salida, int tamBloque, ReservaBuffers reserva) throws IOException {
+		if (tamBloque <= 0) throw new IllegalArgumentException("Tamano de bloque no valido: " + tamBloque);
+		this.salida = salida;
+		this.reserva = reserva;
+		this.bloque = reserva.obtener(tamBloque);
+		this.bufferEscritor = reserva.obtener(TAM_BUFFER_ESCRITOR);
+		this.comprimido = new Acumulador(reserva, tamBloque + tamBloque / 4 + 1024);
+		this.escritor = new EscritorBinarioNIO(comprimido, ByteBuffer.wrap(bufferEscritor));
+		escribirEntero(MAGIA);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		comprobarAbierto();
+		bloque[pendientes++] = (byte) b;
+		if (pendientes == bloque.length) emitirBloque();
+	}
+
+	@Override
+	public void write(byte[] origen, int off, int len) throws IOException {
+		comprobarAbierto();
+		if (off < 0 || len < 0 || off + len > origen.length) throw new IndexOutOfBoundsException();
+		while (len > 0) {
+			int n = Math.min(len, bloque.length - pendientes);
+			System.arraycopy(origen, off, bloque, pendientes, n);
+			pendientes += n;
+			off += n;
+			len -= n;
+			if (pendientes == bloque.length) emitirBloque();
+		}
+	}
+
+	/**
+	 * Comprime y escribe los datos pendientes como un bloque (aunque no este lleno) y vacia
+	 * el flujo subyacente. Cada flush() sin datos nuevos no anade nada.
+	 */
+	@Override
+	public void flush() throws IOException {
+		comprobarAbierto();
+		if (pendientes > 0) emitirBloque();
+		salida.flush();
+	}
+
+	/**
+	 * Escribe los datos pendientes y el final del flujo comprimido sin cerrar el flujo
+	 * subyacente (por ejemplo, para seguir usando un socket). Despues no se puede escribir.
+	 */
+	public void terminar() throws IOException {
+		if (terminado) return;
+		comprobarAbierto();
+		if (pendientes > 0) emitirBloque();
+		Varint.escribir(salida, 0);
+		salida.flush();
+		terminado = true;
+		medidas.setBytesEntrada(bytesEntrada);
+		medidas.setBytesSalida(bytesSalida + 1);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	/**
+	 * Termina el flujo comprimido, devuelve los buffers a la reserva y cierra el flujo
+	 * subyacente.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (cerrado) return;
+		try {
+			terminar();
+		} finally {
+			cerrado = true;
+			reserva.devolver(bloque);
+			reserva.devolver(bufferEscritor);
+			reserva.devolver(comprimido.datos);
+			salida.close();
+		}
+	}
+
+	private void emitirBloque() throws IOException {
+		medidas.iniciarEtapa();
+		HuffmanPorBloques.codificarBloque(bloque, 0, pendientes, escritor);
+		escritor.vaciar();
+		int suma = HuffmanPorBloques.crc32(bloque, 0, pendientes);
+		medidas.finEtapa("codificacion");
+		Varint.escribir(salida, pendientes);
+		Varint.escribir(salida, comprimido.tamano);
+		escribirEntero(suma);
+		salida.write(comprimido.datos, 0, comprimido.tamano);
+		medidas.finEtapa("escritura");
+		bytesEntrada += pendientes;
+		bytesSalida += Varint.tamano(pendientes) + Varint.tamano(comprimido.tamano) + 4 + comprimido.tamano;
+		comprimido.tamano = 0;
+		pendientes = 0;
+	}
+
+	private void escribirEntero(int valor) throws IOException {
+		salida.write(valor >>> 24);
+		salida.write(valor >>> 16);
+		salida.write(valor >>> 8);
+		salida.write(valor);
+	}
+
+	// Tambien falla si close() no pudo terminar el flujo: sus buffers ya estan en la reserva.
+	private void comprobarAbierto() throws IOException {
+		if (cerrado) throw new IOException("Flujo cerrado");
+		if (terminado) throw new IOException("El flujo comprimido ya esta terminado");
+	}
+}
@@ -0,0 +1,196 @@
+package codificacion;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  Frecuencias: Tabla de frecuencias de los 256 valores de byte de un archivo o de un
+ *  array, calculada por bloques (el archivo proyectado en memoria) sin cargarlo entero en
+ *  el heap. Las variantes EnParalelo reparten la entrada en trozos que se cuentan en el
+ *  ForkJoinPool comun y suman las tablas al final.
+ *
+ **************************************************************************************/
+
+public final class Frecuencias {
+
+	// Tamano del buffer de lectura.
+	public static final int TAM_BUFFER = 1 << 16;
+
+	// Tamano minimo de los trozos que se cuentan en paralelo.
+	private static final int TAM_TROZO = 1 << 22;
+
+	// Tamano de las tablas de trabajo de acumular().
+	static final int TAM_CUENTA = 4 * 256;
+
+	private Frecuencias() {}
+
+	/**
+	 * Cuenta las apariciones de cada valor de byte en el archivo.
+	 *
+	 * @param filePath Ruta del archivo a recorrer.
+	 * @return Array de 256 posiciones con la frecuencia de cada byte.
+	 */
+	public static long[] contar(String filePath) {
+
+		long[] frecuencias = new long[256];
+		LectorBinarioNIO lector = new LectorBinarioNIO(filePath);
+		byte[] bloque = new byte[TAM_BUFFER];
+		int[] cuenta = new int[TAM_CUENTA];
+		int leidos;
+		while ((leidos = lector.leerBytes(bloque, 0, bloque.length)) > 0) {
+			acumular(bloque, 0, leidos, frecuencias, cuenta);
+		}
+		lector.cerrarFlujo();
+		return frecuencias;
+	}
+
+	/**
+	 * Cuenta las apariciones de cada valor de byte en el archivo, repartiendolo entre los
+	 * hilos del ForkJoinPool comun.
+	 */
+	public static long[] contarEnParalelo(String filePath) {
+		try (FileChannel canal = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			return new RecuentoArchivo(canal, 0, canal.size()).invoke();
+		} catch (IOException e) {
+			throw new RuntimeException("Error leyendo " + filePath, e);
+		}
+	}
+
+	/**
+	 * Cuenta las apariciones de cada valor de byte en datos[off, off + len).
+	 */
+	public static long[] contar(byte[] datos, int off, int len) {
+		long[] frecuencias = new long[256];
+		acumular(datos, off, len, frecuencias, new int[TAM_CUENTA]);
+		return frecuencias;
+	}
+
+	/**
+	 * Como contar(datos, off, len), repartiendo los datos entre los hilos del ForkJoinPool
+	 * comun si son lo bastante grandes.
+	 */
+	public static long[] contarEnParalelo(byte[] datos, int off, int len) {
+		if (len < 2 * TAM_TROZO) return contar(datos, off, len);
+		return new RecuentoArray(datos, off, len).invoke();
+	}
+
+	/*
+	 * Suma a frecuencias las apariciones de cada byte de datos[off, off + len). Se cuenta
+	 * en cuatro tablas de int, una por posicion modulo 4, para que una racha de bytes
+	 * iguales no encadene cada incremento con el anterior. cuenta son esas tablas
+	 * (TAM_CUENTA enteros a cero), que se dejan otra vez a cero para la siguiente llamada.
+	 */
+	static void acumular(byte[] datos, int off, int len, long[] frecuencias, int[] cuenta) {
+		int i = off;
+		int fin = off + len;
+		for (int fin4 = off + (len & ~3); i < fin4; i += 4) {
+			cuenta[datos[i] & 0xff]++;
+			cuenta[256 + (datos[i + 1] & 0xff)]++;
+			cuenta[512 + (datos[i + 2] & 0xff)]++;
+			cuenta[768 + (datos[i + 3] & 0xff)]++;
+		}
+		for (; i < fin; i++) {
+			cuenta[datos[i] & 0xff]++;
+		}
+		for (int s = 0; s < 256; s++) {
+			frecuencias[s] += (long) cuenta[s] + cuenta[256 + s] + cuenta[512 + s] + cuenta[768 + s];
+		}
+		Arrays.fill(cuenta, 0);
+	}
+
+	private static long[] sumar(long[] a, long[] b) {
+		for (int s = 0; s < 256; s++) {
+			a[s] += b[s];
+		}
+		return a;
+	}
+
+	/*
+	 * Recuento de datos[off, off + len), dividido por la mitad hasta trozos de TAM_TROZO.
+	 */
+	private static final class RecuentoArray extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private final byte[] datos;
+		private final int off;
+		private final int len;
+
+		RecuentoArray(byte[] datos, int off, int len) {
+			this.datos = datos;
+			this.off = off;
+			this.len = len;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (len <= TAM_TROZO) return contar(datos, off, len);
+			int mitad = len / 2;
+			RecuentoArray derecha = new RecuentoArray(datos, off + mitad, len - mitad);
+			derecha.fork();
+			long[] izquierda = new RecuentoArray(datos, off, mitad).compute();
+			return sumar(izquierda, derecha.join());
+		}
+	}
+
+	/*
+	 * Recuento de los bytes [posicion, posicion + len) de un archivo. Cada trozo se
+	 * proyecta en memoria y se copia por bloques a un buffer para contarlo.
+	 */
+	private static final class RecuentoArchivo extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel canal;
+		private final long posicion;
+		private final long len;
+
+		RecuentoArchivo(FileChannel canal, long posicion, long len) {
+			this.canal = canal;
+			this.posicion = posicion;
+			this.len = len;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (len > 4L * TAM_TROZO) {
+				long mitad = len / 2;
+				RecuentoArchivo derecha = new RecuentoArchivo(canal, posicion + mitad, len - mitad);
+				derecha.fork();
+				long[] izquierda = new RecuentoArchivo(canal, posicion, mitad).compute();
+				return sumar(izquierda, derecha.join());
+			}
+			long[] frecuencias = new long[256];
+			if (len == 0) return frecuencias;
+			MappedByteBuffer trozo;
+			try {
+				trozo = canal.map(FileChannel.MapMode.READ_ONLY, posicion, len);
+			} catch (IOException e) {
+				throw new RuntimeException("Error proyectando el archivo en memoria", e);
+			}
+			byte[] bloque = new byte[(int) Math.min(TAM_BUFFER, len)];
+			int[] cuenta = new int[TAM_CUENTA];
+			while (trozo.hasRemaining()) {
+				int n = Math.min(bloque.length, trozo.remaining());
+				trozo.get(bloque, 0, n);
+				acumular(bloque, 0, n, frecuencias, cuenta);
+			}
+			return frecuencias;
+		}
+	}
+
+	/**
+	 * @return La suma de todas las frecuencias, es decir, el numero de bytes contados.
+	 */
+	public static long total(long[] frecuencias) {
+		long total = 0;
+		for (long f : frecuencias) {
+			total += f;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,216 @@
+package codificacion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  HuffmanAdaptativo: Compresion de Huffman en una sola pasada para flujos (tuberias,
+ *  sockets) cuyo contenido no se conoce de antemano. Codificador y decodificador parten
+ *  del mismo modelo (todos los bytes con frecuencia 1), lo actualizan con cada segmento
+ *  procesado y reconstruyen los codigos canonicos cada INTERVALO_RECONSTRUCCION bytes,
+ *  de modo que ambos modelos se mantienen sincronizados sin transmitir ninguna tabla.
+ *
+ *  Cada lectura del flujo de entrada se emite de inmediato como un segmento:
+ *
+ *  	MAGIA (32) | segmento | segmento | ... | 0
+ *  	segmento = numSimbolos (varint > 0) | numBytes (varint) | trama (numBytes bytes)
+ *  	         | numSimbolos (varint > 0) | 0 (varint) | bytes sin comprimir
+ *
+ *  Un segmento cuya trama no ocuparia menos que el original (porque el modelo aun no se
+ *  ha adaptado a un cambio de la entrada) se copia sin comprimir, y los codigos tienen
+ *  como mucho LONGITUD_CODIGO bits, asi que la salida nunca crece mas que unos pocos
+ *  bytes por segmento. Los flujos con MAGIA_V1 no tienen ni lo uno ni lo otro y solo se
+ *  leen.
+ *
+ **************************************************************************************/
+
+public final class HuffmanAdaptativo {
+
+	// "HUFE"
+	public static final int MAGIA = 0x48554645;
+	// "HUFA": flujos sin segmentos sin comprimir ni limite de longitud, que solo se leen.
+	public static final int MAGIA_V1 = 0x48554641;
+	// Longitud maxima de los codigos (package-merge si los de Huffman la superan).
+	public static final int LONGITUD_CODIGO = 15;
+	// Tamano maximo de un segmento.
+	public static final int TAM_SEGMENTO = 1 << 14;
+	// Bytes procesados entre dos reconstrucciones de los codigos.
+	public static final int INTERVALO_RECONSTRUCCION = 1 << 13;
+	// Al superar este total las frecuencias se dividen entre dos, para que el modelo
+	// siga los cambios de la entrada.
+	private static final long LIMITE_FRECUENCIAS = 1 << 20;
+
+	private HuffmanAdaptativo() {}
+
+	/*
+	 * Modelo compartido por codificador y decodificador.
+	 */
+	private static final class Modelo {
+
+		final long[] frecuencias = new long[CodigosCanonicos.NUM_SIMBOLOS];
+		// Se recalculan en su sitio en cada reconstruccion.
+		final CodigosCanonicos codigos = CodigosCanonicos.reutilizable();
+		DecodificadorTabla decodificador;
+		private final boolean decodifica;
+		private final int longitudMaxima;
+		private final int[] cuenta = new int[Frecuencias.TAM_CUENTA];
+		private long total;
+		private int desdeReconstruccion;
+
+		Modelo(boolean decodifica, int longitudMaxima) {
+			this.decodifica = decodifica;
+			this.longitudMaxima = longitudMaxima;
+			Arrays.fill(frecuencias, 1);
+			total = frecuencias.length;
+			reconstruir();
+		}
+
+		void actualizar(byte[] datos, int len) {
+			Frecuencias.acumular(datos, 0, len, frecuencias, cuenta);
+			total += len;
+			desdeReconstruccion += len;
+			if (desdeReconstruccion >= INTERVALO_RECONSTRUCCION) {
+				if (total > LIMITE_FRECUENCIAS) {
+					total = 0;
+					for (int s = 0; s < frecuencias.length; s++) {
+						frecuencias[s] = (frecuencias[s] + 1) / 2;
+						total += frecuencias[s];
+					}
+				}
+				reconstruir();
+			}
+		}
+
+		private void reconstruir() {
+			codigos.recalcular(frecuencias, longitudMaxima);
+			if (decodifica && decodificador == null) {
+				decodificador = new DecodificadorTabla(codigos);
+			} else if (decodifica) {
+				decodificador.recargar(codigos);
+			}
+			desdeReconstruccion = 0;
+		}
+	}
+
+	/**
+	 * Comprime entrada en salida hasta el final de entrada. Cada lectura de entrada se
+	 * codifica y se vuelca (flush) a salida sin esperar a la siguiente. No cierra los flujos.
+	 * El tiempo esperando a la entrada no cuenta en las medidas que se registran.
+	 */
+	public static void comprimir(InputStream entrada, OutputStream salida) throws IOException {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirAdaptativo");
+		Modelo modelo = new Modelo(false, LONGITUD_CODIGO);
+		byte[] segmento = new byte[TAM_SEGMENTO];
+		ByteArrayOutputStream trama = new ByteArrayOutputStream(TAM_SEGMENTO + 64);
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(Channels.newChannel(trama));
+
+		escribirEntero(salida, MAGIA);
+		long bytesEntrada = 0;
+		long bytesSalida = 4;
+		int leidos;
+		while ((leidos = entrada.read(segmento)) >= 0) {
+			if (leidos == 0) continue;
+			medidas.iniciarEtapa();
+			byte[] longitudes = modelo.codigos.longitudes;
+			int[] codigos = modelo.codigos.codigos;
+			for (int i = 0; i < leidos; i++) {
+				int simbolo = segmento[i] & 0xff;
+				escritor.escribirBits(codigos[simbolo], longitudes[simbolo]);
+			}
+			escritor.vaciar();
+			medidas.finEtapa("codificacion");
+			int numBytes = (trama.size() < leidos) ? trama.size() : 0;
+			Varint.escribir(salida, leidos);
+			Varint.escribir(salida, numBytes);
+			if (numBytes > 0) {
+				trama.writeTo(salida);
+			} else {
+				salida.write(segmento, 0, leidos);
+			}
+			trama.reset();
+			salida.flush();
+			medidas.finEtapa("escritura");
+			modelo.actualizar(segmento, leidos);
+			medidas.finEtapa("modelo");
+			bytesEntrada += leidos;
+			bytesSalida += Varint.tamano(leidos) + Varint.tamano(numBytes) + ((numBytes > 0) ? numBytes : leidos);
+		}
+		Varint.escribir(salida, 0);
+		salida.flush();
+		medidas.setBytesEntrada(bytesEntrada);
+		medidas.setBytesSalida(bytesSalida + 1);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	/**
+	 * Descomprime entrada, generada con comprimir(), en salida. Cada segmento se escribe y
+	 * se vuelca en cuanto se recibe completo. No cierra los flujos. El tiempo esperando a la
+	 * entrada no cuenta en las medidas que se registran.
+	 *
+	 * @throws IOException si entrada no tiene el formato esperado o se corta antes del final.
+	 */
+	public static void descomprimir(InputStream entrada, OutputStream salida) throws IOException {
+
+		DataInputStream in = new DataInputStream(entrada);
+		int magia = in.readInt();
+		if (magia != MAGIA && magia != MAGIA_V1) {
+			throw new IOException("El flujo no esta comprimido con Huffman adaptativo");
+		}
+		boolean v1 = (magia == MAGIA_V1);
+		EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimirAdaptativo");
+		Modelo modelo = new Modelo(true, v1 ? CodigosCanonicos.LONGITUD_MAXIMA : LONGITUD_CODIGO);
+		byte[] segmento = new byte[TAM_SEGMENTO];
+		byte[] trama = new byte[TAM_SEGMENTO + 64];
+		long bytesEntrada = 4;
+		long bytesSalida = 0;
+		int numSimbolos;
+		while ((numSimbolos = Varint.leer(in)) != 0) {
+			int numBytes = Varint.leer(in);
+			if (numSimbolos > TAM_SEGMENTO || numBytes < 0) {
+				throw new IOException("Segmento no valido");
+			}
+			boolean crudo = (numBytes == 0 && !v1);
+			if (crudo) {
+				in.readFully(segmento, 0, numSimbolos);
+				medidas.iniciarEtapa();
+			} else {
+				if (numBytes > trama.length) {
+					trama = new byte[numBytes];
+				}
+				in.readFully(trama, 0, numBytes);
+				medidas.iniciarEtapa();
+				LectorBinarioNIO lector = new LectorBinarioNIO(ByteBuffer.wrap(trama, 0, numBytes));
+				modelo.decodificador.decodificar(lector, segmento, 0, numSimbolos);
+			}
+			medidas.finEtapa("decodificacion");
+			salida.write(segmento, 0, numSimbolos);
+			salida.flush();
+			medidas.finEtapa("escritura");
+			modelo.actualizar(segmento, numSimbolos);
+			medidas.finEtapa("modelo");
+			bytesEntrada += Varint.tamano(numSimbolos) + Varint.tamano(numBytes) + (crudo ? numSimbolos : numBytes);
+			bytesSalida += numSimbolos;
+		}
+		medidas.setBytesEntrada(bytesEntrada + 1);
+		medidas.setBytesSalida(bytesSalida);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	private static void escribirEntero(OutputStream salida, int valor) throws IOException {
+		salida.write(valor >>> 24);
+		salida.write(valor >>> 16);
+		salida.write(valor >>> 8);
+		salida.write(valor);
+	}
+}
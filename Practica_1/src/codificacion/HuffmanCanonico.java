@@ -0,0 +1,120 @@
+package codificacion;
+
+import java.io.File;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  HuffmanCanonico: Compresion/descompresion de un archivo con codigos de Huffman
+ *  canonicos. Formato del archivo comprimido:
+ *
+ *  	MAGIA (32 bits) | cabecera de longitudes | numero de bytes (32 bits) | trama
+ *
+ *  La cabecera de longitudes es la de CodigosCanonicos.escribir(). La entrada se
+ *  recorre en dos pasadas (frecuencias y codificacion), sin cargarla en memoria. La
+ *  codificacion no reserva memoria por byte: cada codigo se toma de tablas de enteros
+ *  indexadas por el byte y se anade de una vez al acumulador de EscritorBinarioNIO.
+ *
+ **************************************************************************************/
+
+public final class HuffmanCanonico {
+
+	// "HUFC"
+	public static final int MAGIA = 0x48554643;
+
+	private HuffmanCanonico() {}
+
+	/**
+	 * Comprime filePathIn en filePathOut.
+	 *
+	 * @throws RuntimeException si la entrada supera 2 GB o cambia entre las dos pasadas.
+	 */
+	public static void comprimir(String filePathIn, String filePathOut) {
+		comprimir(filePathIn, filePathOut, CodigosCanonicos.LONGITUD_MAXIMA);
+	}
+
+	/**
+	 * Comprime filePathIn en filePathOut con codigos de como mucho longitudMaxima bits.
+	 * Con longitudMaxima <= 10 todos los codigos se decodifican con una sola consulta a la
+	 * tabla de DecodificadorTabla.
+	 *
+	 * @throws RuntimeException si la entrada supera 2 GB o cambia entre las dos pasadas.
+	 * @throws IllegalArgumentException si los simbolos presentes no caben en longitudMaxima bits.
+	 */
+	public static void comprimir(String filePathIn, String filePathOut, int longitudMaxima) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirCanonico");
+		long[] frecuencias = Frecuencias.contarEnParalelo(filePathIn);
+		long longitud = Frecuencias.total(frecuencias);
+		if (longitud > Integer.MAX_VALUE) {
+			throw new RuntimeException("El archivo de entrada supera el tamano maximo del formato (2 GB)");
+		}
+		medidas.finEtapa("frecuencias");
+		CodigosCanonicos codigos = CodigosCanonicos.desdeFrecuencias(frecuencias, longitudMaxima);
+		medidas.finEtapa("codigos");
+
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(filePathOut);
+		escritor.escribirEntero(MAGIA);
+		codigos.escribir(escritor);
+		escritor.escribirEntero((int) longitud);
+
+		LectorBinarioNIO lector = new LectorBinarioNIO(filePathIn);
+		byte[] bloque = new byte[Frecuencias.TAM_BUFFER];
+		byte[] longitudes = codigos.longitudes;
+		int[] tablaCodigos = codigos.codigos;
+		long codificados = 0;
+		int leidos;
+		while ((leidos = lector.leerBytes(bloque, 0, bloque.length)) > 0) {
+			for (int i = 0; i < leidos; i++) {
+				int simbolo = bloque[i] & 0xff;
+				int longitudCodigo = longitudes[simbolo];
+				if (longitudCodigo == 0) {
+					throw new RuntimeException("El archivo de entrada ha cambiado entre las dos pasadas");
+				}
+				escritor.escribirBits(tablaCodigos[simbolo], longitudCodigo);
+			}
+			codificados += leidos;
+		}
+		lector.cerrarFlujo();
+		long bytesSalida = escritor.bytesEscritos();
+		escritor.cerrarFlujo();
+		if (codificados != longitud) {
+			throw new RuntimeException("El archivo de entrada ha cambiado entre las dos pasadas");
+		}
+		medidas.finEtapa("codificacion");
+		medidas.registrarCodigo(frecuencias, codigos);
+		medidas.setBytesEntrada(longitud);
+		medidas.setBytesSalida(bytesSalida);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	/**
+	 * Descomprime filePathIn, generado con comprimir(), en filePathOut.
+	 *
+	 * @throws RuntimeException si filePathIn no tiene el formato esperado.
+	 */
+	public static void descomprimir(String filePathIn, String filePathOut) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimirCanonico");
+		LectorBinarioNIO lector = new LectorBinarioNIO(filePathIn);
+		if (lector.verBits(32) != MAGIA) {
+			lector.cerrarFlujo();
+			throw new RuntimeException("El archivo no esta comprimido con codigos canonicos");
+		}
+		lector.descartarBits(32);
+		CodigosCanonicos codigos = CodigosCanonicos.leer(lector);
+		int longitud = lector.leerEntero();
+		medidas.finEtapa("codigos");
+
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(filePathOut);
+		new DecodificadorTabla(codigos).decodificar(lector, escritor, longitud);
+		lector.cerrarFlujo();
+		escritor.cerrarFlujo();
+		medidas.finEtapa("decodificacion");
+		medidas.setBytesEntrada(new File(filePathIn).length());
+		medidas.setBytesSalida(longitud);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+}
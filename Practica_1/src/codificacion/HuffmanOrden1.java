@@ -0,0 +1,205 @@
+package codificacion;
+
+import java.io.File;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  HuffmanOrden1: Compresion de Huffman con modelo de contexto de orden 1. El codigo
+ *  de cada byte depende del byte anterior (el contexto), con una tabla de codigos
+ *  canonicos por contexto. Los contextos con pocos datos, en los que la cabecera de una
+ *  tabla propia costaria mas de lo que ahorra, comparten una tabla comun construida con
+ *  la suma de sus frecuencias. Formato del archivo comprimido:
+ *
+ *  	MAGIA (32) | numero de bytes (64) | mapa de contextos (256 bits)
+ *  	tabla comun | tablas propias, por orden de contexto | trama
+ *
+ *  En el mapa, el bit c a 1 indica que el contexto c tiene tabla propia. Todas las tablas
+ *  son cabeceras de longitudes de CodigosCanonicos.escribir(). El contexto del primer
+ *  byte es 0.
+ *
+ **************************************************************************************/
+
+public final class HuffmanOrden1 {
+
+	// "HUFO"
+	public static final int MAGIA = 0x4855464F;
+
+	private static final int NUM_SIMBOLOS = CodigosCanonicos.NUM_SIMBOLOS;
+
+	private HuffmanOrden1() {}
+
+	/**
+	 * Comprime filePathIn en filePathOut. La entrada se recorre dos veces: una para contar
+	 * las frecuencias de cada contexto y otra para codificar.
+	 *
+	 * @throws RuntimeException si la entrada cambia entre las dos pasadas.
+	 */
+	public static void comprimir(String filePathIn, String filePathOut) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirOrden1");
+		long[] frecuencias = contar(filePathIn);
+		long longitud = Frecuencias.total(frecuencias);
+		medidas.finEtapa("frecuencias");
+		CodigosCanonicos[] tablas = elegirTablas(frecuencias);
+		CodigosCanonicos comun = tablas[NUM_SIMBOLOS];
+		medidas.finEtapa("codigos");
+
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(filePathOut);
+		escritor.escribirEntero(MAGIA);
+		escritor.escribirEntero((int) (longitud >>> 32));
+		escritor.escribirEntero((int) longitud);
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			escritor.escribirBit(tablas[c] != comun);
+		}
+		comun.escribir(escritor);
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			if (tablas[c] != comun) tablas[c].escribir(escritor);
+		}
+
+		// Tablas planas indexadas por (contexto << 8) | simbolo.
+		byte[] longitudes = new byte[NUM_SIMBOLOS * NUM_SIMBOLOS];
+		int[] codigos = new int[NUM_SIMBOLOS * NUM_SIMBOLOS];
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			System.arraycopy(tablas[c].longitudes, 0, longitudes, c << 8, NUM_SIMBOLOS);
+			System.arraycopy(tablas[c].codigos, 0, codigos, c << 8, NUM_SIMBOLOS);
+		}
+
+		LectorBinarioNIO lector = new LectorBinarioNIO(filePathIn);
+		byte[] bloque = new byte[Frecuencias.TAM_BUFFER];
+		int contexto = 0;
+		long codificados = 0;
+		int leidos;
+		while ((leidos = lector.leerBytes(bloque, 0, bloque.length)) > 0) {
+			for (int i = 0; i < leidos; i++) {
+				int simbolo = bloque[i] & 0xff;
+				int indice = (contexto << 8) | simbolo;
+				int longitudCodigo = longitudes[indice];
+				if (longitudCodigo == 0) {
+					throw new RuntimeException("El archivo de entrada ha cambiado entre las dos pasadas");
+				}
+				escritor.escribirBits(codigos[indice], longitudCodigo);
+				contexto = simbolo;
+			}
+			codificados += leidos;
+		}
+		lector.cerrarFlujo();
+		long bytesSalida = escritor.bytesEscritos();
+		escritor.cerrarFlujo();
+		if (codificados != longitud) {
+			throw new RuntimeException("El archivo de entrada ha cambiado entre las dos pasadas");
+		}
+		medidas.finEtapa("codificacion");
+		medidas.setBytesEntrada(longitud);
+		medidas.setBytesSalida(bytesSalida);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	/*
+	 * frecuencias[(c << 8) | s] = veces que el byte s aparece justo despues del byte c.
+	 */
+	private static long[] contar(String filePath) {
+
+		long[] frecuencias = new long[NUM_SIMBOLOS * NUM_SIMBOLOS];
+		LectorBinarioNIO lector = new LectorBinarioNIO(filePath);
+		byte[] bloque = new byte[Frecuencias.TAM_BUFFER];
+		int contexto = 0;
+		int leidos;
+		while ((leidos = lector.leerBytes(bloque, 0, bloque.length)) > 0) {
+			for (int i = 0; i < leidos; i++) {
+				int simbolo = bloque[i] & 0xff;
+				frecuencias[(contexto << 8) | simbolo]++;
+				contexto = simbolo;
+			}
+		}
+		lector.cerrarFlujo();
+		return frecuencias;
+	}
+
+	/*
+	 * Decide que contextos llevan tabla propia. Primero se compara, para cada contexto, el
+	 * coste de una tabla propia (cabecera + trama) con el de codificarlo con la tabla de
+	 * orden 0 de toda la entrada; despues la tabla comun se recalcula solo con los
+	 * contextos que no llevan tabla propia.
+	 *
+	 * @return tablas[c] para cada contexto c, y en tablas[256] la tabla comun.
+	 */
+	private static CodigosCanonicos[] elegirTablas(long[] frecuencias) {
+
+		long[] orden0 = new long[NUM_SIMBOLOS];
+		for (int i = 0; i < frecuencias.length; i++) {
+			orden0[i & 0xff] += frecuencias[i];
+		}
+		CodigosCanonicos global = CodigosCanonicos.desdeFrecuencias(orden0);
+
+		CodigosCanonicos[] tablas = new CodigosCanonicos[NUM_SIMBOLOS + 1];
+		long[] comunes = new long[NUM_SIMBOLOS];
+		long[] contexto = new long[NUM_SIMBOLOS];
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			System.arraycopy(frecuencias, c << 8, contexto, 0, NUM_SIMBOLOS);
+			if (Frecuencias.total(contexto) > 0) {
+				CodigosCanonicos propia = CodigosCanonicos.desdeFrecuencias(contexto);
+				if (propia.bitsCabecera() + propia.bitsTrama(contexto, 0) < global.bitsTrama(contexto, 0)) {
+					tablas[c] = propia;
+					continue;
+				}
+			}
+			for (int s = 0; s < NUM_SIMBOLOS; s++) {
+				comunes[s] += contexto[s];
+			}
+		}
+		CodigosCanonicos comun = CodigosCanonicos.desdeFrecuencias(comunes);
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			if (tablas[c] == null) tablas[c] = comun;
+		}
+		tablas[NUM_SIMBOLOS] = comun;
+		return tablas;
+	}
+
+	/**
+	 * Descomprime filePathIn, generado con comprimir(), en filePathOut.
+	 *
+	 * @throws RuntimeException si filePathIn no tiene el formato esperado.
+	 */
+	public static void descomprimir(String filePathIn, String filePathOut) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimirOrden1");
+		LectorBinarioNIO lector = new LectorBinarioNIO(filePathIn);
+		if (lector.verBits(32) != MAGIA) {
+			lector.cerrarFlujo();
+			throw new RuntimeException("El archivo no esta comprimido con el modelo de orden 1");
+		}
+		lector.descartarBits(32);
+		long longitud = ((long) lector.leerEntero() << 32) | (lector.leerEntero() & 0xffffffffL);
+		boolean[] propia = new boolean[NUM_SIMBOLOS];
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			propia[c] = lector.leerBit();
+		}
+		DecodificadorTabla comun = new DecodificadorTabla(CodigosCanonicos.leer(lector));
+		DecodificadorTabla[] decodificadores = new DecodificadorTabla[NUM_SIMBOLOS];
+		for (int c = 0; c < NUM_SIMBOLOS; c++) {
+			decodificadores[c] = propia[c] ? new DecodificadorTabla(CodigosCanonicos.leer(lector)) : comun;
+		}
+		medidas.finEtapa("codigos");
+
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(filePathOut);
+		byte[] salida = new byte[Frecuencias.TAM_BUFFER];
+		int contexto = 0;
+		for (long restantes = longitud; restantes > 0; restantes -= salida.length) {
+			int n = (int) Math.min(restantes, salida.length);
+			for (int i = 0; i < n; i++) {
+				contexto = decodificadores[contexto].decodificarSimbolo(lector);
+				salida[i] = (byte) contexto;
+			}
+			escritor.escribirBytes(salida, 0, n);
+		}
+		lector.cerrarFlujo();
+		escritor.cerrarFlujo();
+		medidas.finEtapa("decodificacion");
+		medidas.setBytesEntrada(new File(filePathIn).length());
+		medidas.setBytesSalida(longitud);
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+}
@@ -0,0 +1,432 @@
+package codificacion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  HuffmanPorBloques: Compresion de Huffman por bloques independientes. La entrada se
+ *  divide en bloques de tamBloque bytes, cada uno con su propia tabla de frecuencias y
+ *  sus propios codigos canonicos, y los bloques se comprimen y descomprimen en paralelo.
+ *  Formato del archivo comprimido:
+ *
+ *  	MAGIA (32) | VERSION (8) | tamBloque (32) | tamano original (64)
+ *  	bloque 0 | bloque 1 | ...   (tipo (8) + datos del bloque, alineado a byte)
+ *  	indice de bloques, con el CRC32 de cada bloque (ver IndiceBloques)
+ *
+ *  Segun su tipo, los datos de un bloque son una cabecera de longitudes seguida de la
+ *  trama (BLOQUE_HUFFMAN), un solo byte que se repite en todo el bloque
+ *  (BLOQUE_CONSTANTE) o una lista de rachas byte (8) | longitud (varint) (BLOQUE_RLE).
+ *  Se elige el tipo que ocupa menos, asi que los bloques de ceros de un archivo disperso
+ *  ocupan un par de bytes y se descomprimen con Arrays.fill.
+ *
+ *  Todas las posiciones y tamanos totales son de 64 bits, asi que no hay limite de 2 GB.
+ *  Los archivos de la version 1 (sin tamano original en la cabecera ni CRC32 en el
+ *  indice) y de la version 2 (sin tipo de bloque) se siguen pudiendo descomprimir.
+ *
+ **************************************************************************************/
+
+public final class HuffmanPorBloques {
+
+	// "HUFB"
+	public static final int MAGIA = 0x48554642;
+	public static final int VERSION = 3;
+	public static final int TAM_CABECERA = 17;
+	private static final int TAM_CABECERA_V1 = 9;
+	// Tamano de bloque por defecto.
+	public static final int TAM_BLOQUE = 1 << 20;
+
+	// Tipos de bloque (a partir de la version 3).
+	static final int BLOQUE_HUFFMAN = 0;
+	static final int BLOQUE_CONSTANTE = 1;
+	static final int BLOQUE_RLE = 2;
+
+	// Buffer de lectura de cada hilo, reutilizado entre bloques.
+	private static final ThreadLocal<byte[]> BUFFER_BLOQUE = new ThreadLocal<byte[]>();
+	// Tablas de codigos de cada hilo, que se recalculan en cada bloque en lugar de crearse:
+	// con bloques pequenos (los de FlujoSalidaHuffman) crearlas costaba mas memoria que el
+	// propio bloque.
+	private static final ThreadLocal<Tablas> TABLAS = new ThreadLocal<Tablas>() {
+		@Override
+		protected Tablas initialValue() {
+			return new Tablas();
+		}
+	};
+
+	private HuffmanPorBloques() {}
+
+	/*
+	 * Frecuencias, codigos y decodificador reutilizables de un hilo.
+	 */
+	private static final class Tablas {
+		final long[] frecuencias = new long[CodigosCanonicos.NUM_SIMBOLOS];
+		final CodigosCanonicos codigos = CodigosCanonicos.reutilizable();
+		private DecodificadorTabla decodificador;
+
+		// Decodificador de los codigos cargados en codigos.
+		DecodificadorTabla decodificador() {
+			if (decodificador == null) {
+				decodificador = new DecodificadorTabla(codigos);
+			} else {
+				decodificador.recargar(codigos);
+			}
+			return decodificador;
+		}
+	}
+
+	/*
+	 * Bloque comprimido, con el tamano y el CRC32 de sus datos originales.
+	 */
+	static final class Bloque {
+		final byte[] comprimido;
+		final int tamOriginal;
+		final int suma;
+
+		Bloque(byte[] comprimido, int tamOriginal, int suma) {
+			this.comprimido = comprimido;
+			this.tamOriginal = tamOriginal;
+			this.suma = suma;
+		}
+	}
+
+	/**
+	 * Comprime filePathIn en filePathOut con el tamano de bloque por defecto, usando un
+	 * hilo por procesador.
+	 */
+	public static void comprimir(String filePathIn, String filePathOut) {
+		comprimir(filePathIn, filePathOut, TAM_BLOQUE, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Comprime filePathIn en filePathOut. Los bloques se comprimen en paralelo y se escriben
+	 * en orden; como mucho hay 2 * hilos bloques en memoria a la vez.
+	 *
+	 * @param tamBloque Tamano de cada bloque en bytes.
+	 * @param hilos Numero de hilos de compresion.
+	 */
+	public static void comprimir(String filePathIn, String filePathOut, final int tamBloque, int hilos) {
+
+		if (tamBloque <= 0) throw new IllegalArgumentException("Tamano de bloque no valido: " + tamBloque);
+		EstadisticasCompresion medidas = new EstadisticasCompresion("comprimirPorBloques");
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		try (final FileChannel entrada = FileChannel.open(Paths.get(filePathIn), StandardOpenOption.READ);
+				FileChannel salida = FileChannel.open(Paths.get(filePathOut), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			long tamano = entrada.size();
+			long numBloques = (tamano + tamBloque - 1) / tamBloque;
+			if (numBloques > Integer.MAX_VALUE / IndiceBloques.TAM_ENTRADA) {
+				throw new RuntimeException("Demasiados bloques: aumente el tamano de bloque");
+			}
+			escribirCompleto(salida, (ByteBuffer) ByteBuffer.allocate(TAM_CABECERA)
+					.putInt(MAGIA).put((byte) VERSION).putInt(tamBloque).putLong(tamano).flip());
+
+			IndiceBloques indice = new IndiceBloques((int) numBloques);
+			ArrayDeque<Future<Bloque>> pendientes = new ArrayDeque<Future<Bloque>>();
+			for (long b = 0; b < numBloques; b++) {
+				final long posicion = b * tamBloque;
+				final int longitud = (int) Math.min(tamBloque, tamano - posicion);
+				pendientes.add(ejecutor.submit(new Callable<Bloque>() {
+					@Override
+					public Bloque call() throws IOException {
+						return comprimirBloque(entrada, posicion, longitud);
+					}
+				}));
+				while (pendientes.size() >= 2 * hilos) {
+					escribirBloque(salida, indice, esperar(pendientes.poll()));
+				}
+			}
+			while (!pendientes.isEmpty()) {
+				escribirBloque(salida, indice, esperar(pendientes.poll()));
+			}
+			medidas.finEtapa("bloques");
+			indice.escribir(salida, MAGIA);
+			medidas.finEtapa("indice");
+			medidas.setBytesEntrada(tamano);
+			medidas.setBytesSalida(salida.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Error de entrada/salida comprimiendo " + filePathIn, e);
+		} finally {
+			ejecutor.shutdownNow();
+		}
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	private static void escribirBloque(FileChannel salida, IndiceBloques indice, Bloque bloque)
+			throws IOException {
+		indice.anadir(salida.position(), bloque.comprimido.length, bloque.tamOriginal, bloque.suma);
+		escribirCompleto(salida, ByteBuffer.wrap(bloque.comprimido));
+	}
+
+	/*
+	 * Comprime un bloque de la entrada con codificarBloque: tipo de bloque seguido de sus
+	 * datos (constante, rachas o cabecera de longitudes y trama, ver la cabecera de la clase).
+	 */
+	static Bloque comprimirBloque(FileChannel entrada, long posicion, int longitud) throws IOException {
+
+		byte[] datos = BUFFER_BLOQUE.get();
+		if (datos == null || datos.length < longitud) {
+			datos = new byte[longitud];
+			BUFFER_BLOQUE.set(datos);
+		}
+		ByteBuffer destino = ByteBuffer.wrap(datos, 0, longitud);
+		while (destino.hasRemaining()) {
+			if (entrada.read(destino, posicion + destino.position()) < 0) {
+				throw new RuntimeException("El archivo de entrada ha cambiado durante la compresion");
+			}
+		}
+		return new Bloque(comprimirBloque(datos, 0, longitud), longitud, crc32(datos, 0, longitud));
+	}
+
+	static int crc32(byte[] datos, int off, int len) {
+		CRC32 crc = new CRC32();
+		crc.update(datos, off, len);
+		return (int) crc.getValue();
+	}
+
+	static byte[] comprimirBloque(byte[] datos, int off, int longitud) {
+		ByteArrayOutputStream salida = new ByteArrayOutputStream(longitud / 2 + 64);
+		EscritorBinarioNIO escritor = new EscritorBinarioNIO(Channels.newChannel(salida));
+		codificarBloque(datos, off, longitud, escritor);
+		escritor.cerrarFlujo();
+		return salida.toByteArray();
+	}
+
+	/*
+	 * Escribe en escritor el tipo de bloque y la codificacion de datos[off, off + longitud)
+	 * que menos ocupa. No alinea ni vacia el escritor.
+	 */
+	static void codificarBloque(byte[] datos, int off, int longitud, EscritorBinarioNIO escritor) {
+
+		// Una sola pasada cuenta las frecuencias y el numero de rachas de bytes iguales.
+		Tablas tablas = TABLAS.get();
+		long[] frecuencias = tablas.frecuencias;
+		Arrays.fill(frecuencias, 0);
+		int fin = off + longitud;
+		int rachas = 0;
+		byte anterior = 0;
+		for (int i = off; i < fin; i++) {
+			byte simbolo = datos[i];
+			frecuencias[simbolo & 0xff]++;
+			if (simbolo != anterior || i == off) rachas++;
+			anterior = simbolo;
+		}
+		if (longitud == 0 || rachas == 1) {
+			escritor.escribirBits(BLOQUE_CONSTANTE, 8);
+			escritor.escribirBits((longitud == 0) ? 0 : datos[off] & 0xff, 8);
+			return;
+		}
+		// Cada racha ocupa al menos 16 bits; solo si eso ya es menos que el bloque de Huffman
+		// merece la pena calcular su tamano exacto.
+		CodigosCanonicos codigos = tablas.codigos;
+		codigos.recalcular(frecuencias, CodigosCanonicos.LONGITUD_MAXIMA);
+		long bitsHuffman = codigos.bitsCabecera() + codigos.bitsTrama(frecuencias, 0);
+		if (16L * rachas < bitsHuffman && bitsRachas(datos, off, fin) < bitsHuffman) {
+			escritor.escribirBits(BLOQUE_RLE, 8);
+			for (int i = off; i < fin;) {
+				byte simbolo = datos[i];
+				int j = i + 1;
+				while (j < fin && datos[j] == simbolo) j++;
+				escritor.escribirBits(simbolo & 0xff, 8);
+				Varint.escribir(escritor, j - i);
+				i = j;
+			}
+			return;
+		}
+		byte[] longitudes = codigos.longitudes;
+		int[] tablaCodigos = codigos.codigos;
+
+		escritor.escribirBits(BLOQUE_HUFFMAN, 8);
+		codigos.escribir(escritor);
+		for (int i = off; i < fin; i++) {
+			int simbolo = datos[i] & 0xff;
+			escritor.escribirBits(tablaCodigos[simbolo], longitudes[simbolo]);
+		}
+	}
+
+	// Bits que ocupa datos[off, fin) codificado como BLOQUE_RLE (sin el tipo).
+	private static long bitsRachas(byte[] datos, int off, int fin) {
+		long bits = 0;
+		for (int i = off; i < fin;) {
+			int j = i + 1;
+			while (j < fin && datos[j] == datos[i]) j++;
+			bits += 8 + 8 * Varint.tamano(j - i);
+			i = j;
+		}
+		return bits;
+	}
+
+	/**
+	 * Descomprime filePathIn, generado con comprimir(), en filePathOut usando un hilo por
+	 * procesador.
+	 */
+	public static void descomprimir(String filePathIn, String filePathOut) {
+		descomprimir(filePathIn, filePathOut, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Descomprime filePathIn en filePathOut. Cada bloque se descomprime en paralelo y se
+	 * escribe directamente en su posicion del archivo de salida.
+	 *
+	 * @param hilos Numero de hilos de descompresion.
+	 * @throws RuntimeException si filePathIn no tiene el formato esperado.
+	 */
+	public static void descomprimir(String filePathIn, String filePathOut, int hilos) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("descomprimirPorBloques");
+		ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+		try (final FileChannel entrada = FileChannel.open(Paths.get(filePathIn), StandardOpenOption.READ);
+				final FileChannel salida = FileChannel.open(Paths.get(filePathOut), StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			final IndiceBloques indice = leerIndice(entrada);
+			medidas.finEtapa("indice");
+			ArrayDeque<Future<byte[]>> pendientes = new ArrayDeque<Future<byte[]>>();
+			long posicionSalida = 0;
+			for (int b = 0; b < indice.getNumBloques(); b++) {
+				final int bloque = b;
+				final long posicion = posicionSalida;
+				pendientes.add(ejecutor.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException {
+						byte[] original = descomprimirBloque(entrada, indice, bloque);
+						ByteBuffer buffer = ByteBuffer.wrap(original);
+						while (buffer.hasRemaining()) {
+							salida.write(buffer, posicion + buffer.position());
+						}
+						return original;
+					}
+				}));
+				posicionSalida += indice.getTamOriginal(b);
+				while (pendientes.size() >= 2 * hilos) {
+					esperar(pendientes.poll());
+				}
+			}
+			while (!pendientes.isEmpty()) {
+				esperar(pendientes.poll());
+			}
+			medidas.finEtapa("bloques");
+			medidas.setBytesEntrada(entrada.size());
+			medidas.setBytesSalida(posicionSalida);
+		} catch (IOException e) {
+			throw new RuntimeException("Error de entrada/salida descomprimiendo " + filePathIn, e);
+		} finally {
+			ejecutor.shutdownNow();
+		}
+		MonitorCompresion.instancia().registrar(medidas);
+	}
+
+	/**
+	 * Comprueba la cabecera del archivo comprimido y lee su indice de bloques.
+	 *
+	 * @throws RuntimeException si el archivo no tiene la cabecera esperada o el indice no
+	 *         coincide con ella.
+	 */
+	static IndiceBloques leerIndice(FileChannel entrada) throws IOException {
+		if (entrada.size() < TAM_CABECERA_V1) {
+			throw new RuntimeException("El archivo no esta comprimido por bloques");
+		}
+		ByteBuffer cabecera = IndiceBloques.leer(entrada, 0, TAM_CABECERA_V1);
+		if (cabecera.getInt() != MAGIA) {
+			throw new RuntimeException("El archivo no esta comprimido por bloques");
+		}
+		int version = cabecera.get();
+		if (version == 1) {
+			IndiceBloques indice = IndiceBloques.leer(entrada, MAGIA, false);
+			indice.setConTipos(false);
+			return indice;
+		}
+		if (version != 2 && version != VERSION) {
+			throw new RuntimeException("Version de formato no soportada: " + version);
+		}
+		long tamano = IndiceBloques.leer(entrada, TAM_CABECERA_V1, TAM_CABECERA - TAM_CABECERA_V1).getLong();
+		IndiceBloques indice = IndiceBloques.leer(entrada, MAGIA, true);
+		if (indice.getTamOriginalTotal() != tamano) {
+			throw new RuntimeException("El indice de bloques no coincide con el tamano original");
+		}
+		indice.setConTipos(version >= 3);
+		return indice;
+	}
+
+	/*
+	 * Lee y descomprime el bloque indicado, comprobando su CRC32 si el indice lo tiene.
+	 */
+	static byte[] descomprimirBloque(FileChannel entrada, IndiceBloques indice, int bloque) throws IOException {
+
+		ByteBuffer comprimido = IndiceBloques.leer(entrada, indice.getDesplazamiento(bloque),
+				indice.getTamComprimido(bloque));
+		byte[] original = new byte[indice.getTamOriginal(bloque)];
+		decodificarBloque(new LectorBinarioNIO(comprimido), original, 0, original.length, indice.tieneTipos());
+		if (indice.tieneSumas() && crc32(original, 0, original.length) != indice.getSuma(bloque)) {
+			throw new RuntimeException("CRC32 incorrecto en el bloque " + bloque + ": archivo danado");
+		}
+		return original;
+	}
+
+	/*
+	 * Decodifica un bloque de longitud bytes en original[off, off + longitud).
+	 *
+	 * @param conTipo false si el bloque no empieza por su tipo (formatos anteriores, en los
+	 *        que todos los bloques son BLOQUE_HUFFMAN).
+	 * @throws RuntimeException si el bloque no es valido.
+	 */
+	static void decodificarBloque(LectorBinarioNIO lector, byte[] original, int off, int longitud,
+			boolean conTipo) {
+		int tipo = conTipo ? lector.leerBits(8) : BLOQUE_HUFFMAN;
+		if (tipo == BLOQUE_HUFFMAN) {
+			Tablas tablas = TABLAS.get();
+			tablas.codigos.cargar(lector);
+			tablas.decodificador().decodificar(lector, original, off, longitud);
+		} else if (tipo == BLOQUE_CONSTANTE) {
+			Arrays.fill(original, off, off + longitud, (byte) lector.leerBits(8));
+		} else if (tipo == BLOQUE_RLE) {
+			int fin = off + longitud;
+			for (int i = off; i < fin;) {
+				byte simbolo = (byte) lector.leerBits(8);
+				int racha = Varint.leer(lector);
+				if (racha <= 0 || racha > fin - i) {
+					throw new RuntimeException("Racha no valida en un bloque comprimido");
+				}
+				Arrays.fill(original, i, i + racha, simbolo);
+				i += racha;
+			}
+		} else {
+			throw new RuntimeException("Tipo de bloque no valido: " + tipo);
+		}
+	}
+
+	private static void escribirCompleto(FileChannel canal, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			canal.write(buffer);
+		}
+	}
+
+	private static <T> T esperar(Future<T> tarea) {
+		try {
+			return tarea.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Compresion interrumpida", e);
+		} catch (ExecutionException e) {
+			Throwable causa = e.getCause();
+			if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+			throw new RuntimeException(causa);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package codificacion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**************************************************************************************
+ *
+ *  IndiceBloques: Indice de los bloques de un archivo comprimido por bloques. Por cada
+ *  bloque guarda su posicion en el archivo comprimido, su tamano comprimido, su tamano
+ *  original y el CRC32 de los datos originales. Se escribe al final del archivo, seguido
+ *  de una cola de tamano fijo:
+ *
+ *  	[desplazamiento (64) | tamComprimido (32) | tamOriginal (32) | CRC32 (32)] x numBloques
+ *  	numBloques (32) | posicion del indice (64) | MAGIA (32)
+ *
+ *  Los archivos de la version 1 del formato no llevan el CRC32 en las entradas.
+ *
+ **************************************************************************************/
+
+public class IndiceBloques {
+
+	static final int TAM_ENTRADA = 20;
+	static final int TAM_ENTRADA_V1 = 16;
+	static final int TAM_COLA = 16;
+
+	private final long[] desplazamientos;
+	private final int[] tamComprimidos;
+	private final int[] tamOriginales;
+	private final int[] sumas;
+	private final boolean conSumas;
+	private boolean conTipos = true;
+	private int numBloques;
+
+	/**
+	 * Constructor de un indice vacio con capacidad para capacidad bloques.
+	 */
+	public IndiceBloques(int capacidad) {
+		this(capacidad, true);
+	}
+
+	private IndiceBloques(int capacidad, boolean conSumas) {
+		this.desplazamientos = new long[capacidad];
+		this.tamComprimidos = new int[capacidad];
+		this.tamOriginales = new int[capacidad];
+		this.sumas = new int[capacidad];
+		this.conSumas = conSumas;
+	}
+
+	/**
+	 * Anade la entrada del siguiente bloque.
+	 *
+	 * @param suma CRC32 de los datos originales del bloque.
+	 */
+	public void anadir(long desplazamiento, int tamComprimido, int tamOriginal, int suma) {
+		desplazamientos[numBloques] = desplazamiento;
+		tamComprimidos[numBloques] = tamComprimido;
+		tamOriginales[numBloques] = tamOriginal;
+		sumas[numBloques] = suma;
+		numBloques++;
+	}
+
+	/**
+	 * Escribe el indice y la cola a partir de la posicion actual del canal.
+	 */
+	public void escribir(FileChannel canal, int magia) throws IOException {
+		long posicionIndice = canal.position();
+		ByteBuffer buffer = ByteBuffer.allocate(numBloques * TAM_ENTRADA + TAM_COLA);
+		for (int b = 0; b < numBloques; b++) {
+			buffer.putLong(desplazamientos[b]).putInt(tamComprimidos[b]).putInt(tamOriginales[b]).putInt(sumas[b]);
+		}
+		buffer.putInt(numBloques).putLong(posicionIndice).putInt(magia);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			canal.write(buffer);
+		}
+	}
+
+	/**
+	 * Lee el indice del final del archivo.
+	 *
+	 * @param conSumas false para los archivos de la version 1, sin CRC32 en las entradas.
+	 * @throws RuntimeException si la cola no tiene la magia esperada o el indice no es coherente.
+	 */
+	public static IndiceBloques leer(FileChannel canal, int magia, boolean conSumas) throws IOException {
+		int tamEntrada = conSumas ? TAM_ENTRADA : TAM_ENTRADA_V1;
+		long tamano = canal.size();
+		if (tamano < TAM_COLA) {
+			throw new RuntimeException("El archivo no tiene indice de bloques");
+		}
+		ByteBuffer cola = leer(canal, tamano - TAM_COLA, TAM_COLA);
+		int numBloques = cola.getInt();
+		long posicionIndice = cola.getLong();
+		if (cola.getInt() != magia || numBloques < 0
+				|| posicionIndice + (long) numBloques * tamEntrada + TAM_COLA != tamano) {
+			throw new RuntimeException("Indice de bloques no valido");
+		}
+		ByteBuffer entradas = leer(canal, posicionIndice, numBloques * tamEntrada);
+		IndiceBloques indice = new IndiceBloques(numBloques, conSumas);
+		for (int b = 0; b < numBloques; b++) {
+			indice.anadir(entradas.getLong(), entradas.getInt(), entradas.getInt(),
+					conSumas ? entradas.getInt() : 0);
+		}
+		return indice;
+	}
+
+	/**
+	 * Lee len bytes del canal a partir de posicion.
+	 */
+	static ByteBuffer leer(FileChannel canal, long posicion, int len) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(len);
+		while (buffer.hasRemaining()) {
+			if (canal.read(buffer, posicion + buffer.position()) < 0) {
+				throw new RuntimeException("Fin de archivo inesperado");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	public int getNumBloques() {
+		return numBloques;
+	}
+
+	public long getDesplazamiento(int bloque) {
+		return desplazamientos[bloque];
+	}
+
+	public int getTamComprimido(int bloque) {
+		return tamComprimidos[bloque];
+	}
+
+	public int getTamOriginal(int bloque) {
+		return tamOriginales[bloque];
+	}
+
+	/**
+	 * @return CRC32 de los datos originales del bloque; solo es valido si tieneSumas().
+	 */
+	public int getSuma(int bloque) {
+		return sumas[bloque];
+	}
+
+	public boolean tieneSumas() {
+		return conSumas;
+	}
+
+	/**
+	 * @return true si cada bloque empieza por su tipo (formato por bloques version 3).
+	 */
+	public boolean tieneTipos() {
+		return conTipos;
+	}
+
+	void setConTipos(boolean conTipos) {
+		this.conTipos = conTipos;
+	}
+
+	/**
+	 * @return Suma de los tamanos originales de todos los bloques.
+	 */
+	public long getTamOriginalTotal() {
+		long total = 0;
+		for (int b = 0; b < numBloques; b++) {
+			total += tamOriginales[b];
+		}
+		return total;
+	}
+}
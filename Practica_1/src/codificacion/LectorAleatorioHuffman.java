@@ -0,0 +1,164 @@
+package codificacion;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**************************************************************************************
+ *
+ *  LectorAleatorioHuffman: Acceso aleatorio a un archivo comprimido por bloques
+ *  (HuffmanPorBloques). Con el indice de bloques del final del archivo se localizan
+ *  los bloques que contienen el rango pedido y solo se descomprimen esos. Los ultimos
+ *  bloques descomprimidos se guardan en una pequena cache, de modo que las lecturas
+ *  consecutivas sobre el mismo bloque no lo vuelven a decodificar. Cada lectura se
+ *  registra en MonitorCompresion, con los bytes comprimidos que ha tenido que leer.
+ *
+ **************************************************************************************/
+
+public class LectorAleatorioHuffman implements AutoCloseable {
+
+	// Numero de bloques descomprimidos que se mantienen en memoria.
+	private static final int BLOQUES_EN_CACHE = 4;
+
+	private final FileChannel canal;
+	private final IndiceBloques indice;
+	// inicios[b] = posicion en el archivo original del primer byte del bloque b;
+	// inicios[numBloques] = tamano del archivo original.
+	private final long[] inicios;
+	private final Map<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> mayor) {
+			return size() > BLOQUES_EN_CACHE;
+		}
+	};
+
+	/**
+	 * Constructor: abre el archivo y lee su indice de bloques.
+	 *
+	 * @param filePath Archivo generado con HuffmanPorBloques.comprimir().
+	 * @throws RuntimeException si el archivo no existe o no tiene el formato esperado.
+	 */
+	public LectorAleatorioHuffman(String filePath) {
+		try {
+			canal = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		} catch (IOException e) {
+			throw new RuntimeException("La ruta del archivo no es correcta o no existe", e);
+		}
+		try {
+			indice = HuffmanPorBloques.leerIndice(canal);
+		} catch (IOException | RuntimeException e) {
+			cerrarCanal();
+			throw (e instanceof RuntimeException) ? (RuntimeException) e
+					: new RuntimeException("Error leyendo el indice de " + filePath, e);
+		}
+		inicios = new long[indice.getNumBloques() + 1];
+		for (int b = 0; b < indice.getNumBloques(); b++) {
+			inicios[b + 1] = inicios[b] + indice.getTamOriginal(b);
+		}
+	}
+
+	/**
+	 * @return Tamano en bytes del archivo original.
+	 */
+	public long longitud() {
+		return inicios[inicios.length - 1];
+	}
+
+	/**
+	 * Lee longitud bytes del archivo original a partir de desplazamiento. Si el rango se sale
+	 * del archivo se devuelven solo los bytes disponibles.
+	 *
+	 * @return Los bytes leidos.
+	 * @throws IndexOutOfBoundsException si desplazamiento o longitud son negativos.
+	 */
+	public byte[] leer(long desplazamiento, int longitud) {
+		if (desplazamiento < 0) {
+			throw new IndexOutOfBoundsException("Desplazamiento negativo: " + desplazamiento);
+		}
+		if (longitud < 0) {
+			throw new IndexOutOfBoundsException("Longitud negativa: " + longitud);
+		}
+		long disponibles = Math.max(0, longitud() - desplazamiento);
+		byte[] destino = new byte[(int) Math.min(longitud, disponibles)];
+		leer(desplazamiento, destino, 0, destino.length);
+		return destino;
+	}
+
+	/**
+	 * Lee hasta len bytes del archivo original a partir de desplazamiento en destino.
+	 *
+	 * @return Numero de bytes leidos; -1 si desplazamiento esta al final del archivo o despues.
+	 */
+	public synchronized int leer(long desplazamiento, byte[] destino, int off, int len) {
+
+		EstadisticasCompresion medidas = new EstadisticasCompresion("leerRango");
+		if (desplazamiento < 0) {
+			throw new IndexOutOfBoundsException("Desplazamiento negativo: " + desplazamiento);
+		}
+		if (off < 0 || len < 0 || off + len > destino.length) {
+			throw new IndexOutOfBoundsException("Rango no valido en destino: off=" + off + ", len=" + len);
+		}
+		if (desplazamiento >= longitud()) {
+			return -1;
+		}
+		// Bloque que contiene desplazamiento (puede haber bloques vacios, se toma el ultimo).
+		int bloque = Arrays.binarySearch(inicios, desplazamiento);
+		if (bloque < 0) {
+			bloque = -bloque - 2;
+		}
+		while (indice.getTamOriginal(bloque) == 0) {
+			bloque++;
+		}
+		int leidos = 0;
+		long bytesComprimidos = 0;
+		while (leidos < len && bloque < indice.getNumBloques()) {
+			if (!cache.containsKey(bloque)) bytesComprimidos += indice.getTamComprimido(bloque);
+			byte[] original = bloque(bloque);
+			int inicio = (int) (desplazamiento + leidos - inicios[bloque]);
+			int n = Math.min(len - leidos, original.length - inicio);
+			System.arraycopy(original, inicio, destino, off + leidos, n);
+			leidos += n;
+			bloque++;
+		}
+		medidas.finEtapa("decodificacion");
+		medidas.setBytesEntrada(bytesComprimidos);
+		medidas.setBytesSalida(leidos);
+		MonitorCompresion.instancia().registrar(medidas);
+		return leidos;
+	}
+
+	private byte[] bloque(int bloque) {
+		byte[] original = cache.get(bloque);
+		if (original == null) {
+			try {
+				original = HuffmanPorBloques.descomprimirBloque(canal, indice, bloque);
+			} catch (IOException e) {
+				throw new RuntimeException("Error leyendo el bloque " + bloque, e);
+			}
+			cache.put(bloque, original);
+		}
+		return original;
+	}
+
+	/**
+	 * Cierra el archivo y libera los recursos del sistema asociados.
+	 */
+	@Override
+	public void close() {
+		cerrarCanal();
+	}
+
+	private void cerrarCanal() {
+		try {
+			canal.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error cerrando el archivo", e);
+		}
+	}
+}
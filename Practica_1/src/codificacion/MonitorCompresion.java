@@ -0,0 +1,136 @@
+package codificacion;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**************************************************************************************
+ *
+ *  MonitorCompresion: Acumula las EstadisticasCompresion de todas las operaciones de
+ *  la JVM y las publica como MBean en codificacion:type=MonitorCompresion. Es seguro
+ *  para varios hilos.
+ *
+ **************************************************************************************/
+
+public final class MonitorCompresion implements MonitorCompresionMBean {
+
+	private static final String NOMBRE = "codificacion:type=MonitorCompresion";
+	private static final MonitorCompresion INSTANCIA = new MonitorCompresion();
+	private static volatile boolean registrado;
+
+	private final AtomicLong operaciones = new AtomicLong();
+	private final AtomicLong bytesEntrada = new AtomicLong();
+	private final AtomicLong bytesSalida = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+	private volatile EstadisticasCompresion ultima;
+
+	private MonitorCompresion() {}
+
+	/**
+	 * @return El monitor de la JVM, registrado en el servidor de MBeans la primera vez.
+	 */
+	public static MonitorCompresion instancia() {
+		if (!registrado) registrar();
+		return INSTANCIA;
+	}
+
+	private static synchronized void registrar() {
+		if (registrado) return;
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombre = new ObjectName(NOMBRE);
+			if (!servidor.isRegistered(nombre)) {
+				servidor.registerMBean(INSTANCIA, nombre);
+			}
+		} catch (JMException e) {
+			throw new RuntimeException("No se pudo registrar " + NOMBRE, e);
+		}
+		registrado = true;
+	}
+
+	/**
+	 * Anade las estadisticas de una operacion terminada.
+	 */
+	public void registrar(EstadisticasCompresion estadisticas) {
+		operaciones.incrementAndGet();
+		bytesEntrada.addAndGet(estadisticas.getBytesEntrada());
+		bytesSalida.addAndGet(estadisticas.getBytesSalida());
+		nanos.addAndGet(estadisticas.getNanosTotales());
+		ultima = estadisticas;
+	}
+
+	/**
+	 * @return Las medidas de la ultima operacion registrada; null si no hay ninguna.
+	 */
+	public EstadisticasCompresion getUltima() {
+		return ultima;
+	}
+
+	@Override
+	public long getOperaciones() {
+		return operaciones.get();
+	}
+
+	@Override
+	public long getBytesEntradaTotales() {
+		return bytesEntrada.get();
+	}
+
+	@Override
+	public long getBytesSalidaTotales() {
+		return bytesSalida.get();
+	}
+
+	@Override
+	public long getNanosTotales() {
+		return nanos.get();
+	}
+
+	@Override
+	public double getRatio() {
+		long entrada = bytesEntrada.get();
+		return (entrada == 0) ? Double.NaN : (double) bytesSalida.get() / entrada;
+	}
+
+	@Override
+	public double getMegabytesPorSegundo() {
+		long n = nanos.get();
+		return (n == 0) ? Double.NaN : bytesEntrada.get() / 1e6 / (n / 1e9);
+	}
+
+	@Override
+	public String getUltimaOperacion() {
+		EstadisticasCompresion e = ultima;
+		return (e == null) ? null : e.aJson();
+	}
+
+	@Override
+	public double getUltimaEntropia() {
+		EstadisticasCompresion e = ultima;
+		return (e == null) ? Double.NaN : e.getEntropia();
+	}
+
+	@Override
+	public double getUltimosBitsPorSimbolo() {
+		EstadisticasCompresion e = ultima;
+		return (e == null) ? Double.NaN : e.getBitsPorSimbolo();
+	}
+
+	@Override
+	public int getUltimaProfundidad() {
+		EstadisticasCompresion e = ultima;
+		return (e == null) ? -1 : e.getProfundidad();
+	}
+
+	@Override
+	public void reiniciar() {
+		operaciones.set(0);
+		bytesEntrada.set(0);
+		bytesSalida.set(0);
+		nanos.set(0);
+		ultima = null;
+	}
+}
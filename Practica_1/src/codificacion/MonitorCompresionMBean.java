@@ -0,0 +1,46 @@
+package codificacion;
+
+/**************************************************************************************
+ *
+ *  MonitorCompresionMBean: Interfaz JMX de MonitorCompresion, visible con jconsole o
+ *  VisualVM bajo codificacion:type=MonitorCompresion. Los getters son atributos de solo
+ *  lectura; reiniciar() es una operacion que pone a cero los acumulados.
+ *
+ **************************************************************************************/
+
+public interface MonitorCompresionMBean {
+
+	long getOperaciones();
+
+	long getBytesEntradaTotales();
+
+	long getBytesSalidaTotales();
+
+	long getNanosTotales();
+
+	/**
+	 * @return Bytes de salida / bytes de entrada acumulados.
+	 */
+	double getRatio();
+
+	/**
+	 * @return MB de entrada procesados por segundo, acumulado.
+	 */
+	double getMegabytesPorSegundo();
+
+	/**
+	 * @return Resumen JSON de la ultima operacion registrada.
+	 */
+	String getUltimaOperacion();
+
+	double getUltimaEntropia();
+
+	double getUltimosBitsPorSimbolo();
+
+	int getUltimaProfundidad();
+
+	/**
+	 * Operacion JMX: pone a cero los acumulados y olvida la ultima operacion.
+	 */
+	void reiniciar();
+}
@@ -0,0 +1,85 @@
+package codificacion;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import entrada_salida.EscritorBinarioNIO;
+import entrada_salida.LectorBinarioNIO;
+
+/**************************************************************************************
+ *
+ *  Varint: Enteros no negativos de longitud variable, en grupos de 7 bits empezando
+ *  por los menos significativos; el bit alto de cada byte indica si sigue otro. Se usan
+ *  para las longitudes de los formatos por segmentos (una longitud menor que 128 ocupa
+ *  un solo byte).
+ *
+ **************************************************************************************/
+
+final class Varint {
+
+	private Varint() {}
+
+	static void escribir(OutputStream salida, int valor) throws IOException {
+		while ((valor & ~0x7f) != 0) {
+			salida.write((valor & 0x7f) | 0x80);
+			valor >>>= 7;
+		}
+		salida.write(valor);
+	}
+
+	/**
+	 * @throws EOFException si el flujo se acaba antes del final del entero.
+	 * @throws IOException si el entero no es valido.
+	 */
+	static int leer(InputStream entrada) throws IOException {
+		int valor = 0;
+		for (int desplazamiento = 0; desplazamiento < 35; desplazamiento += 7) {
+			int b = entrada.read();
+			if (b < 0) throw new EOFException("Flujo comprimido incompleto");
+			valor |= (b & 0x7f) << desplazamiento;
+			if ((b & 0x80) == 0) {
+				if (valor < 0) break;
+				return valor;
+			}
+		}
+		throw new IOException("Entero mal formado");
+	}
+
+	/**
+	 * @return Bytes que ocupa valor codificado.
+	 */
+	static int tamano(int valor) {
+		int n = 1;
+		while ((valor & ~0x7f) != 0) {
+			valor >>>= 7;
+			n++;
+		}
+		return n;
+	}
+
+	static void escribir(EscritorBinarioNIO escritor, int valor) {
+		while ((valor & ~0x7f) != 0) {
+			escritor.escribirBits((valor & 0x7f) | 0x80, 8);
+			valor >>>= 7;
+		}
+		escritor.escribirBits(valor, 8);
+	}
+
+	/**
+	 * @throws RuntimeException si el entero no es valido o la trama se acaba antes.
+	 */
+	static int leer(LectorBinarioNIO lector) {
+		int valor = 0;
+		for (int desplazamiento = 0; desplazamiento < 35; desplazamiento += 7) {
+			int b = lector.leerBits(8);
+			valor |= (b & 0x7f) << desplazamiento;
+			if ((b & 0x80) == 0) {
+				if (valor < 0) break;
+				return valor;
+			}
+		}
+		throw new RuntimeException("Entero mal formado");
+	}
+}
@@ -55,6 +55,19 @@ public class EscritorBinario {
     }
     
     
+    /**
+     * Escribir los n bits menos significativos de valor, empezando por el mas significativo.
+     *
+     * @param valor Bits a escribir, alineados a la derecha.
+     * @param n Numero de bits a escribir (0 a 32).
+     */
+    public void escribirBits(int valor, int n) {
+
+    	for (int i = n - 1; i >= 0; i--) {
+    		escribirBit(((valor >>> i) & 1) == 1);
+    	}
+    }
+
     /**
      * Escribir palabra de 8 bits en el archivo de salida 
      * 
@@ -81,6 +94,30 @@ public class EscritorBinario {
         }
     }
     
+    /**
+     * Escribir len palabras de 8 bits de origen en el archivo de salida. Si la escritura
+     * esta alineada se vuelcan en bloque sobre el flujo; si no, palabra a palabra.
+     *
+     * @param origen Array con las palabras a escribir.
+     * @param off Posicion de la primera palabra en origen.
+     * @param len Numero de palabras a escribir.
+     */
+    public void escribirBytes(byte[] origen, int off, int len) {
+
+    	if (numBitsOcupados == 0) {
+    		try {
+    			out.write(origen, off, len);
+    		}
+    		catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    		return;
+    	}
+    	for (int i = off; i < off + len; i++) {
+    		escribirPalabra(origen[i]);
+    	}
+    }
+
     /**
      * Escribir palabra de 32 bits en el archivo de salida.
      * @param entero el int a escribir
@@ -0,0 +1,195 @@
+package entrada_salida;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**************************************************************************************
+ *
+ *  Utilidad: Escritura de bits sobre un canal NIO. Los bits se acumulan en un long
+ *  y se vuelcan de 8 en 8 bytes a un ByteBuffer (directo si se escribe en un archivo),
+ *  que se escribe en el canal cuando se llena. Escribir un codigo completo es una sola llamada sin reservas de
+ *  memoria, en lugar de una llamada por bit como en EscritorBinario.
+ *
+ **************************************************************************************/
+
+public class EscritorBinarioNIO {
+
+	private static final int TAM_BUFFER = 1 << 16;
+
+	private final WritableByteChannel canal;
+	private final ByteBuffer buffer;
+	private long acumulador;     // Bits pendientes, alineados a la izquierda.
+	private int numBitsOcupados; // Numero de bits ocupados en el acumulador.
+	private long bytesVolcados;  // Bytes ya pasados del acumulador al buffer.
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pathOutputFile El path del archivo de salida donde vamos a escribir.
+	 * @throws RuntimeException Si no se puede crear el archivo de salida.
+	 */
+	public EscritorBinarioNIO(String pathOutputFile) {
+		this(abrir(pathOutputFile), ByteBuffer.allocateDirect(TAM_BUFFER));
+	}
+
+	/**
+	 * Constructor sobre un canal ya abierto (por ejemplo, Channels.newChannel(out)). Se usa
+	 * un buffer en el heap, ya que estos canales copian los datos a un byte[] de todos modos.
+	 */
+	public EscritorBinarioNIO(WritableByteChannel canal) {
+		this(canal, ByteBuffer.allocate(TAM_BUFFER));
+	}
+
+	/**
+	 * Constructor sobre un canal ya abierto y un buffer proporcionado por quien lo llama
+	 * (por ejemplo, un array de una ReservaBuffers envuelto con ByteBuffer.wrap()).
+	 *
+	 * @param buffer Buffer vacio de al menos 8 bytes; el escritor lo usa hasta que se cierra.
+	 */
+	public EscritorBinarioNIO(WritableByteChannel canal, ByteBuffer buffer) {
+		this.canal = canal;
+		this.buffer = buffer;
+	}
+
+	private static FileChannel abrir(String path) {
+		try {
+			return FileChannel.open(Paths.get(path), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("La ruta del archivo no es correcta o no existe", e);
+		}
+	}
+
+	/**
+	 * Escribe los n bits menos significativos de valor, empezando por el mas significativo.
+	 *
+	 * @param valor Bits a escribir, alineados a la derecha.
+	 * @param n Numero de bits a escribir (0 a 32).
+	 */
+	public void escribirBits(int valor, int n) {
+
+		long bits = valor & ((1L << n) - 1);
+		int libres = 64 - numBitsOcupados;
+		if (n < libres) {
+			acumulador |= bits << (libres - n);
+			numBitsOcupados += n;
+		} else {
+			// Se completa el acumulador, se vuelca y el resto de bits pasa al siguiente.
+			int resto = n - libres;
+			acumulador |= bits >>> resto;
+			volcar(acumulador);
+			acumulador = (resto == 0) ? 0 : bits << (64 - resto);
+			numBitsOcupados = resto;
+		}
+	}
+
+	/**
+	 * Escribe un bit: 0=false o 1=true.
+	 */
+	public void escribirBit(boolean bit) {
+		escribirBits(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * Escribe una palabra de 8 bits.
+	 */
+	public void escribirPalabra(int palabra) {
+		escribirBits(palabra & 0xff, 8);
+	}
+
+	/**
+	 * Escribe una palabra de 32 bits.
+	 */
+	public void escribirEntero(int entero) {
+		escribirBits(entero, 32);
+	}
+
+	/**
+	 * Escribe len palabras de 8 bits de origen. Si la escritura esta alineada a byte se
+	 * copian en bloque al buffer; si no, palabra a palabra.
+	 */
+	public void escribirBytes(byte[] origen, int off, int len) {
+		if ((numBitsOcupados & 7) != 0) {
+			for (int i = off; i < off + len; i++) {
+				escribirBits(origen[i] & 0xff, 8);
+			}
+			return;
+		}
+		// Se pasan al buffer los bytes completos del acumulador y despues el bloque.
+		while (numBitsOcupados > 0) {
+			if (!buffer.hasRemaining()) vaciarBuffer();
+			buffer.put((byte) (acumulador >>> 56));
+			acumulador <<= 8;
+			numBitsOcupados -= 8;
+			bytesVolcados++;
+		}
+		while (len > 0) {
+			if (!buffer.hasRemaining()) vaciarBuffer();
+			int n = Math.min(len, buffer.remaining());
+			buffer.put(origen, off, n);
+			off += n;
+			len -= n;
+			bytesVolcados += n;
+		}
+	}
+
+	private void volcar(long palabra) {
+		if (buffer.remaining() < 8) {
+			vaciarBuffer();
+		}
+		buffer.putLong(palabra);
+		bytesVolcados += 8;
+	}
+
+	private void vaciarBuffer() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				canal.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error escribiendo en el archivo de salida", e);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * @return Numero de bytes escritos hasta ahora, contando el ultimo byte incompleto.
+	 */
+	public long bytesEscritos() {
+		return bytesVolcados + (numBitsOcupados + 7) / 8;
+	}
+
+	/**
+	 * Completa con ceros el ultimo byte y vuelca todo lo pendiente al canal, sin cerrarlo.
+	 */
+	public void vaciar() {
+		int bytes = (numBitsOcupados + 7) / 8;
+		for (int i = 0; i < bytes; i++) {
+			if (!buffer.hasRemaining()) {
+				vaciarBuffer();
+			}
+			buffer.put((byte) (acumulador >>> (56 - 8 * i)));
+		}
+		bytesVolcados += bytes;
+		acumulador = 0;
+		numBitsOcupados = 0;
+		vaciarBuffer();
+	}
+
+	/**
+	 * Vuelca lo pendiente, cierra el canal y libera los recursos del sistema asociados.
+	 */
+	public void cerrarFlujo() {
+		vaciar();
+		try {
+			canal.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error cerrando el archivo de salida", e);
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**************************************************************************************
  *  
@@ -35,6 +36,16 @@ public final class LectorBinario {
         llenarBuffer();
     }
    
+    /**
+     * Constructor sobre un flujo ya abierto (por ejemplo, un ByteArrayInputStream con un
+     * bloque comprimido en memoria).
+     */
+    public LectorBinario(InputStream flujo){
+
+        in = new BufferedInputStream(flujo);
+        llenarBuffer();
+    }
+
     private void llenarBuffer() {
        
     	try {
@@ -112,6 +123,69 @@ public final class LectorBinario {
         return bit;
     }
     
+    /**
+     * Lee los próximos n bits en el archivo de entrada.
+     *
+     * @param n Numero de bits a leer (0 a 32).
+     * @return los n bits leidos, alineados a la derecha.
+     * @throws RuntimeException si se alcanzó el final del archivo de entrada.
+     */
+    public int leerBits(int n) {
+
+    	int x = 0;
+    	for (int i = 0; i < n; i++) {
+    		x = (x << 1) | (leerBit() ? 1 : 0);
+    	}
+    	return x;
+    }
+
+    /**
+     * Lee hasta len palabras de 8 bits consecutivas en destino, leyendo del flujo en bloque
+     * en lugar de byte a byte. Funciona tambien si la lectura no esta alineada: en ese caso
+     * cada palabra combina los ultimos bits de un byte con los primeros del siguiente, y si
+     * el flujo se acaba a mitad de palabra la ultima se completa con ceros (igual que hace
+     * EscritorBinario al cerrar el flujo).
+     *
+     * @param destino Array donde se almacenan las palabras leidas.
+     * @param off Posicion de destino a partir de la cual se escribe.
+     * @param len Numero maximo de palabras a leer.
+     * @return Numero de palabras leidas; 0 si el flujo de entrada esta vacio.
+     */
+    public int leerBytes(byte[] destino, int off, int len) {
+
+    	if (esVacio() || len == 0) return 0;
+    	// El buffer actual guarda los numBitsOcupados bits pendientes; el resto se lee en bloque
+    	// detras de ellos y se desplaza para componer palabras completas.
+    	int pendientes = numBitsOcupados;
+    	int acarreo = buffer & ((1 << pendientes) - 1);
+    	int leidos = 0;
+    	try {
+    		while (leidos < len) {
+    			int n = in.read(destino, off + leidos, len - leidos);
+    			if (n < 0) break;
+    			leidos += n;
+    		}
+    	}
+    	catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	for (int i = off; i < off + leidos; i++) {
+    		int b = destino[i] & 0xff;
+    		destino[i] = (byte) ((acarreo << (8 - pendientes)) | (b >>> pendientes));
+    		acarreo = b & ((1 << pendientes) - 1);
+    	}
+    	if (leidos == len) {
+    		// Los bits sobrantes del ultimo byte leido quedan pendientes en el buffer.
+    		buffer = acarreo;
+    		numBitsOcupados = pendientes;
+    		return leidos;
+    	}
+    	// Fin de flujo: los bits pendientes forman la ultima palabra.
+    	destino[off + leidos] = (byte) (acarreo << (8 - pendientes));
+    	buffer = EOF;
+    	return leidos + 1;
+    }
+
     /**
      * Lee la próxima palabra de 32 bits en el archivo de entrada.
      *
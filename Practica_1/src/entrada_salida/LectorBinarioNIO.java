@@ -0,0 +1,206 @@
+package entrada_salida;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**************************************************************************************
+ *
+ *  Utilidad: Lectura de bits sobre un ByteBuffer. Para archivos el buffer es un
+ *  MappedByteBuffer (el archivo se proyecta en memoria por ventanas de hasta
+ *  TAM_VENTANA bytes), y para datos en memoria basta con ByteBuffer.wrap(). Los bits
+ *  se cargan de 32 en 32 en un acumulador de 64 bits, de forma que verBits(n) y
+ *  leerBits(n) devuelven hasta 32 bits en una sola llamada.
+ *
+ **************************************************************************************/
+
+public class LectorBinarioNIO {
+
+	// Tamano maximo de cada proyeccion del archivo en memoria.
+	private static final long TAM_VENTANA = 1L << 30;
+
+	private final FileChannel canal;   // null si se lee de un buffer en memoria
+	private final long tamanoArchivo;
+	private long finVentana;           // Posicion del archivo donde acaba la ventana actual
+	private ByteBuffer buffer;
+	private long acumulador;           // Bits pendientes, alineados a la izquierda.
+	private int bitsAcumulados;        // Numero de bits pendientes en el acumulador.
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pathName El path del archivo de entrada.
+	 * @throws RuntimeException Si la ruta del archivo de entrada no es correcta o no existe.
+	 */
+	public LectorBinarioNIO(String pathName) {
+		try {
+			canal = FileChannel.open(Paths.get(pathName), StandardOpenOption.READ);
+			tamanoArchivo = canal.size();
+		} catch (IOException e) {
+			throw new RuntimeException("La ruta del archivo no es correcta o no existe", e);
+		}
+		buffer = ByteBuffer.allocate(0);
+		mapearSiguienteVentana();
+	}
+
+	/**
+	 * Constructor sobre datos en memoria. Se lee desde la posicion actual hasta el limite.
+	 */
+	public LectorBinarioNIO(ByteBuffer datos) {
+		canal = null;
+		tamanoArchivo = 0;
+		buffer = datos;
+	}
+
+	private boolean mapearSiguienteVentana() {
+		if (canal == null || finVentana >= tamanoArchivo) {
+			return false;
+		}
+		long inicio = finVentana;
+		long tamano = Math.min(TAM_VENTANA, tamanoArchivo - inicio);
+		try {
+			buffer = canal.map(FileChannel.MapMode.READ_ONLY, inicio, tamano);
+		} catch (IOException e) {
+			throw new RuntimeException("Error proyectando el archivo de entrada", e);
+		}
+		finVentana = inicio + tamano;
+		return true;
+	}
+
+	/*
+	 * Carga bytes en el acumulador hasta tener mas de 32 bits o agotar la entrada.
+	 */
+	private void rellenar() {
+		if (bitsAcumulados <= 32 && buffer.remaining() >= 4) {
+			acumulador |= (buffer.getInt() & 0xffffffffL) << (32 - bitsAcumulados);
+			bitsAcumulados += 32;
+			return;
+		}
+		while (bitsAcumulados <= 56) {
+			if (!buffer.hasRemaining() && !mapearSiguienteVentana()) {
+				return;
+			}
+			acumulador |= (long) (buffer.get() & 0xff) << (56 - bitsAcumulados);
+			bitsAcumulados += 8;
+		}
+	}
+
+	/**
+	 * @return true si y solo si no quedan bits por leer.
+	 */
+	public boolean esVacio() {
+		if (bitsAcumulados == 0) rellenar();
+		return bitsAcumulados == 0;
+	}
+
+	/**
+	 * Devuelve los proximos n bits sin consumirlos. Si quedan menos de n bits, los que
+	 * faltan se devuelven a cero.
+	 *
+	 * @param n Numero de bits (1 a 32).
+	 * @return los n bits, alineados a la derecha.
+	 */
+	public int verBits(int n) {
+		if (bitsAcumulados < n) rellenar();
+		return (int) (acumulador >>> (64 - n));
+	}
+
+	/**
+	 * Consume los proximos n bits.
+	 *
+	 * @param n Numero de bits (0 a 32).
+	 * @throws RuntimeException si quedan menos de n bits.
+	 */
+	public void descartarBits(int n) {
+		if (bitsAcumulados < n) {
+			rellenar();
+			if (bitsAcumulados < n) throw new RuntimeException("Leyendo de un flujo de entrada vacio");
+		}
+		acumulador <<= n;
+		bitsAcumulados -= n;
+	}
+
+	/**
+	 * Lee los proximos n bits.
+	 *
+	 * @param n Numero de bits (0 a 32).
+	 * @return los n bits leidos, alineados a la derecha.
+	 * @throws RuntimeException si quedan menos de n bits.
+	 */
+	public int leerBits(int n) {
+		if (n == 0) return 0;
+		int bits = verBits(n);
+		descartarBits(n);
+		return bits;
+	}
+
+	/**
+	 * Lee el proximo bit y lo devuelve como booleano.
+	 */
+	public boolean leerBit() {
+		return leerBits(1) == 1;
+	}
+
+	/**
+	 * Lee la proxima palabra de 8 bits.
+	 */
+	public char leerPalabra() {
+		return (char) leerBits(8);
+	}
+
+	/**
+	 * Lee la proxima palabra de 32 bits.
+	 */
+	public int leerEntero() {
+		return leerBits(32);
+	}
+
+	/**
+	 * Lee hasta len palabras de 8 bits consecutivas en destino. Si la lectura esta alineada
+	 * a byte se copian en bloque desde el buffer. Si el flujo se acaba a mitad de palabra
+	 * la ultima se completa con ceros.
+	 *
+	 * @return Numero de palabras leidas; 0 si no quedan bits.
+	 */
+	public int leerBytes(byte[] destino, int off, int len) {
+		int leidos = 0;
+		if ((bitsAcumulados & 7) != 0) {
+			// Lectura no alineada: cada palabra pasa por el acumulador.
+			while (leidos < len) {
+				if (bitsAcumulados < 8) rellenar();
+				if (bitsAcumulados == 0) break;
+				int n = Math.min(8, bitsAcumulados);
+				destino[off + leidos++] = (byte) verBits(8);
+				descartarBits(n);
+			}
+			return leidos;
+		}
+		// Lectura alineada: se vacia el acumulador y el resto se copia en bloque.
+		while (leidos < len && bitsAcumulados > 0) {
+			destino[off + leidos++] = (byte) leerBits(8);
+		}
+		while (leidos < len) {
+			if (!buffer.hasRemaining() && !mapearSiguienteVentana()) {
+				break;
+			}
+			int n = Math.min(len - leidos, buffer.remaining());
+			buffer.get(destino, off + leidos, n);
+			leidos += n;
+		}
+		return leidos;
+	}
+
+	/**
+	 * Cierra el archivo y libera los recursos del sistema asociados.
+	 */
+	public void cerrarFlujo() {
+		if (canal == null) return;
+		try {
+			canal.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Error cerrando el archivo de entrada", e);
+		}
+	}
+}
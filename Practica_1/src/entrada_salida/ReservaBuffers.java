@@ -0,0 +1,83 @@
+package entrada_salida;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**************************************************************************************
+ *
+ *  ReservaBuffers: Reserva de arrays de bytes reutilizables, agrupados por tamano. Los
+ *  flujos que necesitan buffers grandes durante toda su vida (por ejemplo, uno por
+ *  peticion en un servidor) los piden a la reserva al abrirse y los devuelven al
+ *  cerrarse, de modo que en regimen estable no se reserva memoria nueva. De cada tamano
+ *  se guardan como mucho maximoPorTamano arrays; el resto se deja al recolector.
+ *
+ *  Es segura para varios hilos. Se puede sustituir por una subclase (con otra politica
+ *  de retencion, por ejemplo) alli donde se pasa como parametro.
+ *
+ **************************************************************************************/
+
+public class ReservaBuffers {
+
+	private static final ReservaBuffers COMPARTIDA = new ReservaBuffers(64);
+
+	private final int maximoPorTamano;
+	private final ConcurrentMap<Integer, Libres> libres = new ConcurrentHashMap<Integer, Libres>();
+
+	// Arrays libres de un tamano, con su numero (size() de la cola es lineal).
+	private static final class Libres {
+		final ConcurrentLinkedQueue<byte[]> cola = new ConcurrentLinkedQueue<byte[]>();
+		final AtomicInteger numero = new AtomicInteger();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maximoPorTamano Numero maximo de arrays libres que se guardan de cada tamano.
+	 */
+	public ReservaBuffers(int maximoPorTamano) {
+		this.maximoPorTamano = maximoPorTamano;
+	}
+
+	/**
+	 * @return La reserva compartida por defecto.
+	 */
+	public static ReservaBuffers compartida() {
+		return COMPARTIDA;
+	}
+
+	/**
+	 * Devuelve un array de exactamente tamano bytes, reutilizado si hay alguno libre. Su
+	 * contenido es indeterminado.
+	 */
+	public byte[] obtener(int tamano) {
+		Libres l = libres.get(tamano);
+		if (l != null) {
+			byte[] array = l.cola.poll();
+			if (array != null) {
+				l.numero.decrementAndGet();
+				return array;
+			}
+		}
+		return new byte[tamano];
+	}
+
+	/**
+	 * Devuelve a la reserva un array obtenido con obtener(). No se debe seguir usando.
+	 */
+	public void devolver(byte[] array) {
+		if (array == null) return;
+		Libres l = libres.get(array.length);
+		if (l == null) {
+			Libres nuevo = new Libres();
+			l = libres.putIfAbsent(array.length, nuevo);
+			if (l == null) l = nuevo;
+		}
+		if (l.numero.incrementAndGet() <= maximoPorTamano) {
+			l.cola.offer(array);
+		} else {
+			l.numero.decrementAndGet();
+		}
+	}
+}
@@ -11,13 +11,13 @@ package estructuras_datos;
 public class ArbolHuffman implements Comparable<ArbolHuffman> {
 	
 	private final char simbolo;
-	private final int frecuencia;
+	private final long frecuencia;
 	private final ArbolHuffman izquierdo, derecho;
 
 	/**  
 	 * Constructor.
 	 */
-	public ArbolHuffman(char simbolo, int frecuencia, ArbolHuffman izquierdo, ArbolHuffman derecho) {
+	public ArbolHuffman(char simbolo, long frecuencia, ArbolHuffman izquierdo, ArbolHuffman derecho) {
 		this.simbolo    = simbolo;
 		this.frecuencia  = frecuencia;
 		this.izquierdo  = izquierdo;
@@ -47,7 +47,7 @@ public class ArbolHuffman implements Comparable<ArbolHuffman> {
      * 		   <0 si si la frecuencia de este árbol(this) es menor que la del segundo (otro);
      */
 	public int compareTo(ArbolHuffman otro) {
-		return this.frecuencia - otro.frecuencia;
+		return Long.compare(this.frecuencia, otro.frecuencia);
 	}
 	
 	// Getters:
@@ -61,7 +61,7 @@ public class ArbolHuffman implements Comparable<ArbolHuffman> {
 	/**
 	 * @return frecuencia
 	 */
-	public int getFrecuencia() {
+	public long getFrecuencia() {
 		return frecuencia;
 	}
 	
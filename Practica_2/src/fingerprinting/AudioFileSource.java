@@ -0,0 +1,192 @@
+package fingerprinting;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/*********************************************************************
+* AudioFileSource reads an audio file and delivers it in the format
+* captured from the microphone (AudioParams: 44.1 kHz, mono, 8-bit signed
+* PCM), so songs can be added and matched without a sound card.
+*
+* Any file AudioSystem can read (WAV, AIFF, AU) is accepted. Files ending
+* in .raw or .pcm have no header and are taken to be in AudioParams format
+* already. Samples are decoded to PCM (if the file is compressed, e.g.
+* mu-law), the channels of each frame are averaged, and the result is
+* resampled to 44.1 kHz by linear interpolation and quantized to 8 bits.
+* The conversion is streamed, so memory use does not depend on the length
+* of the file.
+**********************************************************************/
+
+public class AudioFileSource extends InputStream {
+
+    private final AudioInputStream source;
+    private final int channels;
+    private final int bytesPerSample;
+    private final boolean signed;
+    private final boolean bigEndian;
+    // Source samples per output sample
+    private final double ratio;
+    private final byte[] frames;
+    private int framesRead;
+    private int framePosition;
+    // Linear interpolation between the source samples previous and current
+    private double previous;
+    private double current;
+    private double position;
+    private boolean started;
+    private boolean finished;
+
+    // The format every file is converted to
+    public static AudioFormat targetFormat() {
+        return new AudioFormat(AudioParams.sampleRate, AudioParams.sampleSizeInBits,
+                AudioParams.channels, AudioParams.signed, AudioParams.bigEndian);
+    }
+
+    public AudioFileSource(File file) throws IOException, UnsupportedAudioFileException {
+        this(open(file));
+    }
+
+    public AudioFileSource(AudioInputStream stream) throws UnsupportedAudioFileException {
+        AudioFormat format = stream.getFormat();
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED)
+                && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+            // Let Java Sound decode it to 16-bit PCM at the same rate
+            AudioFormat pcm = new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, false);
+            if (!AudioSystem.isConversionSupported(pcm, format)) {
+                throw new UnsupportedAudioFileException("Unsupported encoding " + encoding);
+            }
+            stream = AudioSystem.getAudioInputStream(pcm, stream);
+            format = pcm;
+        }
+        int bits = format.getSampleSizeInBits();
+        if (bits <= 0 || bits % 8 != 0 || bits > 32 || format.getSampleRate() <= 0) {
+            throw new UnsupportedAudioFileException("Unsupported format " + format);
+        }
+        this.source = stream;
+        this.channels = format.getChannels();
+        this.bytesPerSample = bits / 8;
+        this.signed = format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED);
+        this.bigEndian = format.isBigEndian();
+        this.ratio = format.getSampleRate() / AudioParams.sampleRate;
+        this.frames = new byte[AudioParams.bufferSize * channels * bytesPerSample];
+    }
+
+    private static AudioInputStream open(File file) throws IOException, UnsupportedAudioFileException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".raw") || name.endsWith(".pcm")) {
+            return new AudioInputStream(new BufferedInputStream(new FileInputStream(file)),
+                    targetFormat(), AudioSystem.NOT_SPECIFIED);
+        }
+        return AudioSystem.getAudioInputStream(file);
+    }
+
+    // Read a whole file, converted to AudioParams format
+    public static byte[] readAll(File file) throws IOException, UnsupportedAudioFileException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AudioFileSource in = new AudioFileSource(file)) {
+            byte[] buffer = new byte[AudioParams.chunkSize];
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return (read(one, 0, 1) < 0) ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!started) {
+            // Interpolation starts between the first two samples (a file with a
+            // single sample just repeats it)
+            started = true;
+            finished = !nextSample();
+            previous = current;
+            if (!finished) {
+                nextSample();
+            }
+        }
+        int n = 0;
+        while (n < len && !finished) {
+            while (position >= 1) {
+                previous = current;
+                if (!nextSample()) {
+                    finished = true;
+                    break;
+                }
+                position -= 1;
+            }
+            if (finished) {
+                break;
+            }
+            double value = previous + (current - previous) * position;
+            buffer[off + n++] = (byte) Math.max(-128, Math.min(127, Math.round(value * 128)));
+            position += ratio;
+        }
+        return (n == 0) ? -1 : n;
+    }
+
+    // Load the next mono source sample (in [-1, 1)) into current. Returns
+    // false at the end of the file.
+    private boolean nextSample() throws IOException {
+        int frameSize = channels * bytesPerSample;
+        if (framePosition + frameSize > framesRead) {
+            int kept = framesRead - framePosition;
+            System.arraycopy(frames, framePosition, frames, 0, kept);
+            framesRead = kept;
+            framePosition = 0;
+            while (framesRead < frameSize) {
+                int n = source.read(frames, framesRead, frames.length - framesRead);
+                if (n < 0) {
+                    return false;
+                }
+                framesRead += n;
+            }
+        }
+        double sum = 0;
+        for (int c = 0; c < channels; c++) {
+            sum += decode(framePosition + c * bytesPerSample);
+        }
+        framePosition += frameSize;
+        current = sum / channels;
+        return true;
+    }
+
+    // Decode the sample at frames[at] as a value in [-1, 1)
+    private double decode(int at) {
+        long value = 0;
+        for (int b = 0; b < bytesPerSample; b++) {
+            int index = bigEndian ? at + b : at + bytesPerSample - 1 - b;
+            value = (value << 8) | (frames[index] & 0xff);
+        }
+        int bits = 8 * bytesPerSample;
+        if (signed) {
+            value = (value << (64 - bits)) >> (64 - bits);
+        } else {
+            value -= 1L << (bits - 1);
+        }
+        return value / (double) (1L << (bits - 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
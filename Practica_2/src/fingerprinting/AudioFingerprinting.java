@@ -1,15 +1,27 @@
 package fingerprinting;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.sampled.LineUnavailableException;
+import serialization.Serialization;
 
 /*********************************************************************
 * AudioFingerprinting is the class which contains the main method.
 *
 * Usage:     java AudioFingerprinting -matching | -add "songTitle"
+*                | -adddir directory | -matchdir directory | -convert | -compact
 * Example (1): java AudioFingerprinting -add "Wish you were here"
 * Example (2): java AudioFingerprinting -matching);
+* Example (3): java AudioFingerprinting -adddir songs
+*              (adds every WAV/AIFF/AU/raw file, named after the file)
+* Example (4): java AudioFingerprinting -matchdir clips
+*              (matches every file; no microphone or sound card needed)
+* Example (5): java AudioFingerprinting -convert
+*              (converts serialized/hashmap.ser into serialized/index.bin)
+* Example (6): java AudioFingerprinting -compact
+*              (merges the added songs into serialized/index.bin)
 * 
 **********************************************************************/
 
@@ -36,8 +48,30 @@ public class AudioFingerprinting {
                         Logger.getLogger(AudioFingerprinting.class.getName()).log(Level.SEVERE, null, ex);
                     }
                 }
+                // If we want to convert the old serialized song repository
+                if (args[0].equals("-convert")) {
+                    Serialization.convertHashMap();
+                    exit = true;
+                }
+                // If we want to merge the segments into the main index now
+                if (args[0].equals("-compact")) {
+                    try {
+                        Serialization.indexStore().compact();
+                    } catch (IOException ex) {
+                        Logger.getLogger(AudioFingerprinting.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                    exit = true;
+                }
                 break;
             case 2:
+                // If we want to add or match a directory of audio files
+                if (args[0].equals("-adddir")) {
+                    new AudioRecognizer().addDirectory(new File(args[1]));
+                    exit = true;
+                } else if (args[0].equals("-matchdir")) {
+                    new AudioRecognizer().matchDirectory(new File(args[1]));
+                    exit = true;
+                }
                 // If we want to add a new song to the song repository
                 String songId = args[1];
                 if (args[0].equals("-add")) {
@@ -53,9 +87,14 @@ public class AudioFingerprinting {
                 break;
         }
         if (!exit) {
-            System.err.println("\nUsage:     java AudioFingerprinting -matching | -add \"songTitle\"");
+            System.err.println("\nUsage:     java AudioFingerprinting -matching | -add \"songTitle\""
+                    + " | -adddir directory | -matchdir directory | -convert | -compact");
             System.err.println("Example (1): java AudioFingerprinting -add \"Wish you were here\"");
-            System.err.println("Example (2): java AudioFingerprinting -matching\n\n");
+            System.err.println("Example (2): java AudioFingerprinting -matching");
+            System.err.println("Example (3): java AudioFingerprinting -adddir songs");
+            System.err.println("Example (4): java AudioFingerprinting -matchdir clips");
+            System.err.println("Example (5): java AudioFingerprinting -convert");
+            System.err.println("Example (6): java AudioFingerprinting -compact\n\n");
         }    
     }
 }
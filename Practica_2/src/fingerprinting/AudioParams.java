@@ -22,4 +22,14 @@ public class AudioParams {
     
     // Hash function fuzz factor 
     public static final int fuzzFactor = 2;
+    
+    // Streaming matching - stop as soon as the leading song has at least
+    // minMatchScore hits at one offset and matchLeadFactor times the hits of
+    // the runner-up
+    public static final int minMatchScore = 5;
+    public static final int matchLeadFactor = 2;
+    
+    // Song repository - segments appended before they are merged into the
+    // main index in the background
+    public static final int maxSegments = 8;
 }
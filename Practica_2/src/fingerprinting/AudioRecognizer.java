@@ -1,13 +1,14 @@
 package fingerprinting;
 
+import index.CompactIndex;
+import index.FingerprintIndex;
+import index.IndexStore;
 import serialization.Serialization;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.sampled.AudioFormat;
@@ -15,23 +16,26 @@ import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.TargetDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
 import utilities.HashingFunctions;
 import utilities.Spectrum;
 
 public class AudioRecognizer {
 
-	// The main hashtable required in our interpretation of the algorithm to
-	// store the song repository
-	private Map<Long, List<KeyPoint>> hashMapSongRepository;
+	// The song repository, mapped from the index file
+	private FingerprintIndex songRepository;
+
+	// The songs added in this run that are not saved yet
+	private CompactIndex.Builder newSongs;
 
 	// Variable to stop/start the listening loop
-	public boolean running;
+	public volatile boolean running;
 
 	// Constructor
 	public AudioRecognizer() {
 
-		// Deserialize the hash table hashMapSongRepository (our song repository)
-		this.hashMapSongRepository = Serialization.deserializeHashMap();
+		// Map the song repository (converting "hashmap.ser" the first time)
+		this.songRepository = Serialization.loadIndex();
 		this.running = true;
 	}
 
@@ -50,39 +54,44 @@ public class AudioRecognizer {
 		line.open(audioFormat);
 		line.start();
 
+		// Each chunk is fingerprinted as soon as it is complete, so memory use
+		// does not grow with the recording and matching can stop early
+		final StreamingMatcher matcher = isMatching ? new StreamingMatcher(songRepository) : null;
+		final ChunkHasher hasher = new ChunkHasher(isMatching ? matcher : adder(songId));
+
 		Thread listeningThread = new Thread(new Runnable() {
 
 			@Override
 			public void run() {
-				// Output stream 
-				ByteArrayOutputStream outStream = new ByteArrayOutputStream();
 				// Reader buffer
 				byte[] buffer = new byte[AudioParams.bufferSize];               
-				int n = 0;
-				try {
-					while (running) {
-						// Reading
-						int count = line.read(buffer, 0, buffer.length);
-						// If buffer is not empty
-						if (count > 0) {
-							outStream.write(buffer, 0, count);
-						}
+				String leader = null;
+				while (running) {
+					// Reading
+					int count = line.read(buffer, 0, buffer.length);
+					// If buffer is not empty
+					if (count > 0 && !hasher.write(buffer, 0, count)) {
+						break;
 					}
-
-					byte[] audioTimeDomain = outStream.toByteArray();
-
-					// Compute magnitude spectrum
-					double [][] magnitudeSpectrum = Spectrum.compute(audioTimeDomain);                    
-					// Determine the shazam action (add or matching) and perform it
-					shazamAction(magnitudeSpectrum, songId, isMatching);                    
-					// Close stream
-					outStream.close();                    
-					// Serialize again the hashMapSongRepository (our song repository)
-					Serialization.serializeHashMap(hashMapSongRepository);                
-				} catch (IOException e) {
-					System.err.println("I/O exception " + e);
-					System.exit(-1);
+					if (isMatching && matcher.getBestSong() != null && !matcher.getBestSong().equals(leader)) {
+						leader = matcher.getBestSong();
+						System.out.println("Leading: " + leader + " (score " + matcher.getBestScore() + ")");
+					}
+				}
+				line.stop();
+				line.close();
+				if (isMatching) {
+					// Print the songId string which represents the best matching
+					System.out.println("Best song: " + matcher.getBestSong()
+							+ " (score " + matcher.getBestScore() + ", runner-up " + matcher.getSecondScore()
+							+ ", after " + hasher.getChunks() + " chunks)");
+				}
+				// Save the song repository if a song was added
+				saveRepository();
+				if (!running) {
+					return;
 				}
+				System.out.println("Press ENTER key to exit...");
 			}
 		});
 
@@ -98,84 +107,125 @@ public class AudioRecognizer {
 		this.running = false;               
 	}   
 
-	// Determine the shazam action (add or matching a song) and perform it 
-	private void shazamAction(double[][] magnitudeSpectrum, String songId, boolean isMatching) {  
+	// Add every audio file in directory to the song repository, using the file
+	// name without its extension as songId. Each song is saved as soon as it
+	// is added.
+	public void addDirectory(File directory) {
 
-		// Hash table used for matching (Map<songId, Map<offset,count>>)
-		Map<String, Map<Integer,Integer>> matchMap = 
-				new HashMap<String, Map<Integer,Integer>>(); 
+		for (File file : audioFiles(directory)) {
+			String name = file.getName();
+			String songId = (name.lastIndexOf('.') > 0) ? name.substring(0, name.lastIndexOf('.')) : name;
+			try {
+				int chunks = addFile(file, songId);
+				System.out.println("Added: " + songId + " (" + chunks + " chunks)");
+				saveRepository();
+			} catch (IOException | UnsupportedAudioFileException ex) {
+				System.err.println("Skipping " + file + ": " + ex.getMessage());
+			}
+		}
+	}
 
-		// Iterate over all the chunks/ventanas from the magnitude spectrum
-		for (int c = 0; c < magnitudeSpectrum.length; c++) { 
-			// Compute the hash entry for the current chunk/ventana (magnitudeSpectrum[c])
-			// ...
-			Long entry = computeHashEntry(magnitudeSpectrum[c]);
+	// Add the song in file to the song repository (without saving it). The
+	// spectrum of the whole file is computed in parallel. Returns the number
+	// of chunks added.
+	public int addFile(File file, String songId) throws IOException, UnsupportedAudioFileException {
 
-			// ... Esto porque me apetece ponerlo aqui, pero si no funciona hay que bajarlo donde el hashMapSongRepository
-			List<KeyPoint> keyPointsList;
+		byte[] audioTimeDomain = AudioFileSource.readAll(file);
+		double[] magnitudeSpectrum = Spectrum.computeParallel(audioTimeDomain);
+		int chunks = Spectrum.chunks(audioTimeDomain);
+		ChunkHasher.Listener adder = adder(songId);
+		for (int c = 0; c < chunks; c++) {
+			adder.onHash(c, computeHashEntry(magnitudeSpectrum, c * AudioParams.chunkSize));
+		}
+		return chunks;
+	}
 
-			// In the case of adding the song to the repository
-			if (!isMatching) { 
-				// ...
-				if((keyPointsList = hashMapSongRepository.get(entry)) == null) {
-					keyPointsList = new ArrayList<KeyPoint>();
-					hashMapSongRepository.put(entry, keyPointsList);
-				}
+	// Match every audio file in directory against the song repository and
+	// print the best song for each one
+	public void matchDirectory(File directory) {
 
-				// Adding keypoint to the list in its relative hash entry which has been computed before
-				// ...
-				KeyPoint point = new KeyPoint(songId, c);
-				// ...
-				keyPointsList.add(point);
+		for (File file : audioFiles(directory)) {
+			try {
+				StreamingMatcher matcher = matchFile(file);
+				System.out.println(file.getName() + " -> " + matcher.getBestSong()
+						+ " (score " + matcher.getBestScore() + ", runner-up " + matcher.getSecondScore() + ")");
+			} catch (IOException | UnsupportedAudioFileException ex) {
+				System.err.println("Skipping " + file + ": " + ex.getMessage());
 			}
-			// In the case of matching a song fragment
-			else {
-				keyPointsList = hashMapSongRepository.get(entry);
-				if(keyPointsList != null) {
-					// Iterate over the list of keypoints that matches the hash entry
-					// in the the current chunk
-					for(int i = 0; i < keyPointsList.size(); i++) {
-						// For each keypoint:
-						// Compute the time offset (Math.abs(point.getTimestamp() - c))
-						// ...
-						Map<Integer,Integer> matchedSong = matchMap.get(keyPointsList.get(i).getSongId());
-						int offset = Math.abs(keyPointsList.get(i).getTimestamp() - c);
-						int counter = 0;
-						// Now, focus on the matchMap hashtable:
-						// If songId (extracted from the current keypoint) has not been found yet in the matchMap add it
-						if(!matchMap.containsKey(keyPointsList.get(i).getSongId())) {
-							// ...
-							matchedSong = new HashMap<Integer,Integer>();
-							matchedSong.put(offset, 1);
-							matchMap.put(keyPointsList.get(i).getSongId(), matchedSong);
-							// (else) songId has been added in a past chunk
-						} else {
-							// If this is the first time the computed offset appears for this particular songId
-							if(matchedSong.containsKey(offset)) {
-								// ...
-								counter = matchedSong.get(offset) + 1;
-								matchedSong.put(offset, counter);
-								// (else) 
-							} else {
-								// ...
-								matchedSong.put(offset, 1);
-							}
-						}
-						if(counter > 1) {
-							System.out.println("Offset: " + offset + ", counter: " + counter);
-						}
-					}
-				}
-			}            
-		} // End iterating over the chunks/ventanas of the magnitude spectrum
-		// If we chose matching, we 
-		if (isMatching) {
-			showBestMatching(matchMap);
 		}
 	}
 
+	// Match the clip in file, streaming it chunk by chunk until one song
+	// clearly leads or the file ends
+	public StreamingMatcher matchFile(File file) throws IOException, UnsupportedAudioFileException {
+
+		StreamingMatcher matcher = new StreamingMatcher(songRepository);
+		ChunkHasher hasher = new ChunkHasher(matcher);
+		try (AudioFileSource in = new AudioFileSource(file)) {
+			byte[] buffer = new byte[AudioParams.bufferSize];
+			int count;
+			while ((count = in.read(buffer, 0, buffer.length)) > 0 && hasher.write(buffer, 0, count)) {
+			}
+		}
+		return matcher;
+	}
+
+	// Regular files of directory, sorted by name (hidden files are skipped)
+	private static List<File> audioFiles(File directory) {
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IllegalArgumentException(directory + " is not a directory");
+		}
+		Arrays.sort(files);
+		List<File> audio = new ArrayList<File>();
+		for (File file : files) {
+			if (file.isFile() && !file.isHidden()) {
+				audio.add(file);
+			}
+		}
+		return audio;
+	}
+
+	// Append the songs added since the last call to the song repository as a
+	// new segment, and merge the segments into the main index in the
+	// background once there are AudioParams.maxSegments of them. Nothing is
+	// written if no song was added.
+	public void saveRepository() {
+
+		if (newSongs == null) {
+			return;
+		}
+		IndexStore store = Serialization.indexStore();
+		try {
+			store.append(newSongs.build());
+			newSongs = null;
+			songRepository = store.open();
+			store.compactInBackground(AudioParams.maxSegments);
+		} catch (IOException ex) {
+			System.out.println("Input/output error " + ex);
+		}
+	}
+
+	// Listener that adds the keypoint of each chunk of the song songId to the
+	// new songs (in memory until saveRepository)
+	private ChunkHasher.Listener adder(String songId) {
+		if (newSongs == null) {
+			newSongs = new CompactIndex.Builder();
+		}
+		final CompactIndex.Builder repository = newSongs;
+		final int song = repository.song(songId);
+		return new ChunkHasher.Listener() {
+			@Override
+			public boolean onHash(int chunk, long hash) {
+				repository.add(hash, song, chunk);
+				return true;
+			}
+		};
+	}
+
 	// Find out in which range the frequency is
-	private int getIndex(int freq) {
+	private static int getIndex(int freq) {
 
 		int i = 0;
 		while (AudioParams.range[i] < freq) {
@@ -184,8 +234,8 @@ public class AudioRecognizer {
 		return i;
 	}  
 
-	// Compute hash entry for the chunk/ventana spectra 
-	private long computeHashEntry(double[] chunk) {
+	// Compute hash entry for the chunk/ventana spectra starting at chunk[offset]
+	static long computeHashEntry(double[] chunk, int offset) {
 
 		// Variables to determine the hash entry for this chunk/window spectra
 		double highscores[] = new double[AudioParams.range.length];
@@ -193,7 +243,7 @@ public class AudioRecognizer {
 
 		for (int freq = AudioParams.lowerLimit; freq < AudioParams.unpperLimit - 1; freq++) {
 			// Get the magnitude
-			double mag = chunk[freq];
+			double mag = chunk[offset + freq];
 			// Find out which range we are in
 			int index = getIndex(freq);
 			// Save the highest magnitude and corresponding frequency:
@@ -206,30 +256,4 @@ public class AudioRecognizer {
 		return HashingFunctions.hash1(frequencyPoints[0], frequencyPoints[1], 
 				frequencyPoints[2],frequencyPoints[3],AudioParams.fuzzFactor);
 	}
-
-	// Method to find the songId with the most frequently/repeated time offset
-	private void showBestMatching(Map<String, Map<Integer,Integer>> matchMap) {
-		
-		int freq;
-		int maxFreq = 0;
-		String selectedSong = null;
-		
-		// Iterate over the songs in the hashtable used for matching (matchMap)
-		// ...
-		for (Map.Entry<String, Map<Integer, Integer>> songs : matchMap.entrySet()) {
-			// (For each song) Iterate over the nested hashtable Map<offset,count>
-			for (Entry<Integer, Integer> song : songs.getValue().entrySet()) {
-				// Get the biggest offset for the current song and update (if necessary)
-				// the best overall result found till the current iteration
-				freq = song.getValue();
-				if(freq >= maxFreq) {
-					maxFreq = freq;
-					selectedSong = songs.getKey();
-				}
-			}
-		}
-		
-		// Print the songId string which represents the best matching     
-		System.out.println("Best song: " + selectedSong);
-	}
 }
\ No newline at end of file
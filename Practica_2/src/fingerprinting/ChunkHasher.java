@@ -0,0 +1,55 @@
+package fingerprinting;
+
+import utilities.Spectrum;
+
+/*********************************************************************
+* ChunkHasher turns a stream of audio samples into one hash entry per
+* chunk/ventana as soon as each chunk is complete, so audio can be
+* fingerprinted while it is being captured. Memory use is one chunk of
+* samples and one spectrum, whatever the length of the stream.
+* Not thread-safe.
+**********************************************************************/
+
+public class ChunkHasher {
+
+    // Receives the hash entry of each complete chunk
+    public interface Listener {
+        // Return false to stop hashing
+        boolean onHash(int chunk, long hash);
+    }
+
+    private final Listener listener;
+    private final byte[] window = new byte[AudioParams.chunkSize];
+    private final double[] spectrum = new double[AudioParams.chunkSize];
+    private int filled;
+    private int chunks;
+    private boolean stopped;
+
+    public ChunkHasher(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Feed len bytes of audio. Returns false once the listener has asked to
+    // stop; the remaining audio is then ignored.
+    public boolean write(byte[] audio, int off, int len) {
+        while (len > 0 && !stopped) {
+            int n = Math.min(len, window.length - filled);
+            System.arraycopy(audio, off, window, filled, n);
+            filled += n;
+            off += n;
+            len -= n;
+            if (filled == window.length) {
+                Spectrum.computeChunk(window, 0, spectrum, 0);
+                long hash = AudioRecognizer.computeHashEntry(spectrum, 0);
+                stopped = !listener.onHash(chunks++, hash);
+                filled = 0;
+            }
+        }
+        return !stopped;
+    }
+
+    // Number of chunks hashed so far
+    public int getChunks() {
+        return chunks;
+    }
+}
@@ -0,0 +1,76 @@
+package fingerprinting;
+
+import index.FingerprintIndex;
+import java.util.HashMap;
+import java.util.Map;
+
+/*********************************************************************
+* StreamingMatcher matches a query chunk by chunk against the song
+* repository (use it as the Listener of a ChunkHasher). For every song it
+* counts the hits at each time offset, as in the batch matching, and keeps
+* a running score per song (its best offset count) together with the
+* leader and the runner-up. It asks to stop as soon as the leader has at
+* least AudioParams.minMatchScore hits and AudioParams.matchLeadFactor
+* times the score of the runner-up.
+**********************************************************************/
+
+public class StreamingMatcher implements ChunkHasher.Listener, FingerprintIndex.PostingVisitor {
+
+    private final FingerprintIndex index;
+    // Map<song << 32 | offset, count>
+    private final Map<Long, Integer> matchMap = new HashMap<Long, Integer>();
+    private int chunk;
+    private int bestSong = -1;
+    private int bestScore;
+    private int secondScore;
+
+    public StreamingMatcher(FingerprintIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public boolean onHash(int chunk, long hash) {
+        this.chunk = chunk;
+        index.lookup(hash, this);
+        return !isDecided();
+    }
+
+    @Override
+    public void visit(int song, int timestamp) {
+        long key = ((long) song << 32) | Math.abs(timestamp - chunk);
+        Integer previous = matchMap.get(key);
+        int count = (previous == null) ? 1 : previous + 1;
+        matchMap.put(key, count);
+
+        // Scores only grow, so the runner-up is either the old leader or a
+        // song that has just passed the old runner-up
+        if (song == bestSong) {
+            bestScore = Math.max(bestScore, count);
+        } else if (count > bestScore) {
+            secondScore = bestScore;
+            bestScore = count;
+            bestSong = song;
+        } else if (count > secondScore) {
+            secondScore = count;
+        }
+    }
+
+    // True once one song clearly leads
+    public boolean isDecided() {
+        return bestScore >= AudioParams.minMatchScore
+                && bestScore >= AudioParams.matchLeadFactor * secondScore;
+    }
+
+    // The leading song so far (null if nothing has matched)
+    public String getBestSong() {
+        return (bestSong < 0) ? null : index.getSongId(bestSong);
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public int getSecondScore() {
+        return secondScore;
+    }
+}
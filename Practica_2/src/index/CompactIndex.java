@@ -0,0 +1,341 @@
+package index;
+
+import fingerprinting.KeyPoint;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*********************************************************************
+* CompactIndex stores the song repository in primitive arrays, in CSR
+* layout: the postings of all hash entries are packed one after another in
+* postings[] (song id << 32 | timestamp, 8 bytes each) and offsets[h] is
+* where the postings of the h-th distinct hash start. A primitive
+* open-addressing table (linear probing) maps each hash to h. songIds are
+* interned: each posting stores the int id of its song.
+*
+* Compared with a HashMap<Long, List<KeyPoint>> (a boxed key, an
+* ArrayList and a KeyPoint per posting) this needs about 8 bytes per
+* posting plus about 30 bytes per distinct hash. It is immutable and
+* thread-safe; use a Builder to create it. Up to Integer.MAX_VALUE - 8
+* postings. write() saves it in the binary format read by MappedIndex.
+**********************************************************************/
+
+public class CompactIndex implements FingerprintIndex {
+
+    private final long[] keys;
+    // slots[i] = h + 1 if keys[i] holds the h-th distinct hash, 0 if empty
+    private final int[] slots;
+    private final int mask;
+    private final int[] offsets;
+    private final long[] postings;
+    private final String[] songIds;
+    private final Map<String, Integer> songs;
+
+    CompactIndex(long[] keys, int[] slots, int[] offsets, long[] postings, String[] songIds,
+            Map<String, Integer> songs) {
+        this.keys = keys;
+        this.slots = slots;
+        this.mask = keys.length - 1;
+        this.offsets = offsets;
+        this.postings = postings;
+        this.songIds = songIds;
+        this.songs = songs;
+    }
+
+    // Build a compact index with the contents of a HashMap repository
+    public static CompactIndex fromMap(Map<Long, List<KeyPoint>> repository) {
+        Builder builder = new Builder();
+        for (Map.Entry<Long, List<KeyPoint>> entry : repository.entrySet()) {
+            for (KeyPoint point : entry.getValue()) {
+                builder.add(entry.getKey(), point.getSongId(), point.getTimestamp());
+            }
+        }
+        return builder.build();
+    }
+
+    // Slot of hash in the open-addressing table, or -1 if it is not there
+    private int find(long hash) {
+        int i = mix(hash) & mask;
+        while (slots[i] != 0) {
+            if (keys[i] == hash) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    static int mix(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public void lookup(long hash, PostingVisitor visitor) {
+        int slot = find(hash);
+        if (slot < 0) {
+            return;
+        }
+        int h = slots[slot] - 1;
+        for (int p = offsets[h]; p < offsets[h + 1]; p++) {
+            visitor.visit((int) (postings[p] >>> 32), (int) postings[p]);
+        }
+    }
+
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (slots[i] != 0) {
+                int h = slots[i] - 1;
+                for (int p = offsets[h]; p < offsets[h + 1]; p++) {
+                    visitor.visit(keys[i], (int) (postings[p] >>> 32), (int) postings[p]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int count(long hash) {
+        int slot = find(hash);
+        if (slot < 0) {
+            return 0;
+        }
+        int h = slots[slot] - 1;
+        return offsets[h + 1] - offsets[h];
+    }
+
+    @Override
+    public int getSongCount() {
+        return songIds.length;
+    }
+
+    @Override
+    public String getSongId(int song) {
+        return songIds[song];
+    }
+
+    @Override
+    public int findSong(String songId) {
+        Integer song = songs.get(songId);
+        return (song == null) ? -1 : song;
+    }
+
+    @Override
+    public long getPostingCount() {
+        return postings.length;
+    }
+
+    // Number of distinct hash entries
+    public int getHashCount() {
+        return offsets.length - 1;
+    }
+
+    // Write the index to out in the layout described in MappedIndex
+    public void write(WritableByteChannel out) throws IOException {
+        write(out, 0);
+    }
+
+    // Write the index to out, recording that it includes the segment files
+    // up to lastSegment
+    public void write(WritableByteChannel out, int lastSegment) throws IOException {
+
+        byte[][] names = new byte[songIds.length][];
+        int stringBytes = 0;
+        for (int s = 0; s < songIds.length; s++) {
+            names[s] = songIds[s].getBytes(StandardCharsets.UTF_8);
+            stringBytes += names[s].length;
+        }
+        long[] layout = MappedIndex.layout(MappedIndex.VERSION, keys.length, getHashCount(), postings.length,
+                songIds.length, stringBytes);
+
+        // Open-addressing table of the song ids, to find a song by name
+        int[] songTable = new int[MappedIndex.songTableSize(songIds.length)];
+        for (int s = 0; s < songIds.length; s++) {
+            int i = mix(songIds[s].hashCode()) & (songTable.length - 1);
+            while (songTable[i] != 0) {
+                i = (i + 1) & (songTable.length - 1);
+            }
+            songTable[i] = s + 1;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        buffer.putInt(MappedIndex.MAGIC).putInt(MappedIndex.VERSION).putInt(keys.length)
+                .putInt(getHashCount()).putInt(postings.length).putInt(songIds.length)
+                .putInt(stringBytes).putInt(lastSegment);
+        for (long key : keys) {
+            ensure(out, buffer, 8).putLong(key);
+        }
+        for (int slot : slots) {
+            ensure(out, buffer, 4).putInt(slot);
+        }
+        for (int offset : offsets) {
+            ensure(out, buffer, 4).putInt(offset);
+        }
+        // Keep the postings 8-byte aligned
+        if (layout[MappedIndex.POSTINGS] != layout[MappedIndex.OFFSETS] + 4L * offsets.length) {
+            ensure(out, buffer, 4).putInt(0);
+        }
+        for (long posting : postings) {
+            ensure(out, buffer, 8).putLong(posting);
+        }
+        int stringOffset = 0;
+        ensure(out, buffer, 4).putInt(0);
+        for (byte[] name : names) {
+            stringOffset += name.length;
+            ensure(out, buffer, 4).putInt(stringOffset);
+        }
+        for (int song : songTable) {
+            ensure(out, buffer, 4).putInt(song);
+        }
+        for (byte[] name : names) {
+            int b = 0;
+            while (b < name.length) {
+                int n = Math.min(ensure(out, buffer, 1).remaining(), name.length - b);
+                buffer.put(name, b, n);
+                b += n;
+            }
+        }
+        flush(out, buffer);
+    }
+
+    // Flush buffer to out if it has less than bytes free
+    private static ByteBuffer ensure(WritableByteChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(out, buffer);
+        }
+        return buffer;
+    }
+
+    private static void flush(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*****************************************************************
+    * Builder collects postings in growable primitive arrays and lays
+    * them out by hash in build(), in linear time (count per hash, prefix
+    * sums, then place), without sorting.
+    *****************************************************************/
+    public static class Builder {
+
+        private long[] hashes = new long[1024];
+        private long[] packed = new long[1024];
+        private int size;
+        private final Map<String, Integer> songs = new HashMap<String, Integer>();
+        private String[] songIds = new String[16];
+
+        // Intern songId and return its int id
+        public int song(String songId) {
+            Integer id = songs.get(songId);
+            if (id == null) {
+                id = songs.size();
+                songs.put(songId, id);
+                if (id == songIds.length) {
+                    songIds = Arrays.copyOf(songIds, 2 * id);
+                }
+                songIds[id] = songId;
+            }
+            return id;
+        }
+
+        public void add(long hash, String songId, int timestamp) {
+            add(hash, song(songId), timestamp);
+        }
+
+        // Add every posting of index
+        public void addAll(FingerprintIndex index) {
+            final int[] ids = new int[index.getSongCount()];
+            for (int s = 0; s < ids.length; s++) {
+                ids[s] = song(index.getSongId(s));
+            }
+            index.forEach(new FingerprintIndex.EntryVisitor() {
+                @Override
+                public void visit(long hash, int song, int timestamp) {
+                    add(hash, ids[song], timestamp);
+                }
+            });
+        }
+
+        public void add(long hash, int song, int timestamp) {
+            if (size == hashes.length) {
+                if (size == Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Too many postings");
+                }
+                int capacity = (int) Math.min(2L * size, Integer.MAX_VALUE - 8);
+                hashes = Arrays.copyOf(hashes, capacity);
+                packed = Arrays.copyOf(packed, capacity);
+            }
+            hashes[size] = hash;
+            packed[size] = ((long) song << 32) | (timestamp & 0xFFFFFFFFL);
+            size++;
+        }
+
+        public CompactIndex build() {
+
+            // Open-addressing table, kept at most half full
+            long[] keys = new long[16];
+            int[] slots = new int[16];
+
+            // Distinct hash of every posting, numbered in order of first
+            // appearance, and number of postings per distinct hash
+            int[] ofPosting = new int[size];
+            int[] counts = new int[size + 1];
+            int distinct = 0;
+            for (int p = 0; p < size; p++) {
+                int mask = keys.length - 1;
+                int i = mix(hashes[p]) & mask;
+                while (slots[i] != 0 && keys[i] != hashes[p]) {
+                    i = (i + 1) & mask;
+                }
+                if (slots[i] == 0) {
+                    keys[i] = hashes[p];
+                    slots[i] = ++distinct;
+                }
+                ofPosting[p] = slots[i] - 1;
+                counts[slots[i]]++;
+                if (2 * distinct > keys.length) {
+                    long[] oldKeys = keys;
+                    int[] oldSlots = slots;
+                    keys = new long[2 * oldKeys.length];
+                    slots = new int[2 * oldKeys.length];
+                    rehash(oldKeys, oldSlots, keys, slots);
+                }
+            }
+
+            // Prefix sums, then place every posting in its hash's range
+            int[] offsets = Arrays.copyOf(counts, distinct + 1);
+            for (int h = 0; h < distinct; h++) {
+                offsets[h + 1] += offsets[h];
+            }
+            int[] next = Arrays.copyOf(offsets, distinct);
+            long[] postings = new long[size];
+            for (int p = 0; p < size; p++) {
+                postings[next[ofPosting[p]]++] = packed[p];
+            }
+            return new CompactIndex(keys, slots, offsets, postings, Arrays.copyOf(songIds, songs.size()),
+                    new HashMap<String, Integer>(songs));
+        }
+
+        private static void rehash(long[] oldKeys, int[] oldSlots, long[] keys, int[] slots) {
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldSlots[j] != 0) {
+                    int i = mix(oldKeys[j]) & mask;
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    slots[i] = oldSlots[j];
+                }
+            }
+        }
+    }
+}
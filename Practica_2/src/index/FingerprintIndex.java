@@ -0,0 +1,41 @@
+package index;
+
+/*********************************************************************
+* FingerprintIndex is a read-only song repository: for each hash entry,
+* the postings (song, timestamp) of every chunk with that hash. Songs are
+* identified by int ids from 0 to getSongCount() - 1; getSongId turns them
+* back into the songId strings.
+**********************************************************************/
+
+public interface FingerprintIndex {
+
+    // Receives the postings of a hash entry
+    interface PostingVisitor {
+        void visit(int song, int timestamp);
+    }
+
+    // Receives every entry of the index
+    interface EntryVisitor {
+        void visit(long hash, int song, int timestamp);
+    }
+
+    // Call visitor for every posting of hash, in insertion order
+    void lookup(long hash, PostingVisitor visitor);
+
+    // Call visitor for every posting of every hash. The postings of each
+    // hash come together and in insertion order; the hashes in no order.
+    void forEach(EntryVisitor visitor);
+
+    // Number of postings of hash
+    int count(long hash);
+
+    int getSongCount();
+
+    String getSongId(int song);
+
+    // Int id of songId, or -1 if it is not in the index
+    int findSong(String songId);
+
+    // Total number of postings
+    long getPostingCount();
+}
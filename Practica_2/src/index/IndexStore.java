@@ -0,0 +1,300 @@
+package index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*********************************************************************
+* IndexStore keeps the song repository in a directory as a main index file
+* (index.bin) plus an append-only log of segment files
+* (segment-00000001.bin, ...), all in the MappedIndex format.
+*
+* - append() writes the songs added by a run as a new segment, so adding
+*   costs I/O proportional to the new songs, not to the repository.
+* - open() maps the main index and the segments after it and merges them
+*   at query time (SegmentedIndex). It never writes anything.
+* - compact() merges the segments into a new main index, which records
+*   the number of the last segment it includes; segments up to that
+*   number are then deleted (and ignored if a crash leaves them behind).
+*
+* Every file is written to a temporary file, synced and renamed, so a
+* crash never leaves a partial index or segment. Writers (in this or other
+* processes) are serialized with a lock file; compaction builds the new
+* main index without holding the lock and discards it if another
+* compaction finished first. Readers take no lock.
+**********************************************************************/
+
+public class IndexStore {
+
+    public static final String MAIN_FILE = "index.bin";
+    private static final String LOCK_FILE = "index.lock";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private final File directory;
+    // Lock of the writers of this process (a FileLock is held per process)
+    private final ReentrantLock writers = new ReentrantLock();
+    private Thread compactor;
+
+    public IndexStore(File directory) {
+        this.directory = directory;
+    }
+
+    public File getMainFile() {
+        return new File(directory, MAIN_FILE);
+    }
+
+    // Map the repository: the main index merged with the segments that are
+    // not in it yet. An empty index if there is nothing stored.
+    public FingerprintIndex open() throws IOException {
+
+        while (true) {
+            MappedIndex main = openMain();
+            int lastSegment = (main == null) ? 0 : main.getLastSegment();
+            List<FingerprintIndex> parts = new ArrayList<FingerprintIndex>();
+            if (main != null) {
+                parts.add(main);
+            }
+            try {
+                for (File segment : segments(lastSegment).values()) {
+                    parts.add(MappedIndex.open(segment));
+                }
+            } catch (NoSuchFileException ex) {
+                // Deleted by a compaction that has just replaced the main index
+                continue;
+            }
+            // Segments are deleted only after the main index that includes
+            // them is in place, so an unchanged main index means that no
+            // segment was missed
+            MappedIndex current = openMain();
+            if (((current == null) ? 0 : current.getLastSegment()) != lastSegment) {
+                continue;
+            }
+            if (parts.isEmpty()) {
+                return new CompactIndex.Builder().build();
+            }
+            return (parts.size() == 1) ? parts.get(0) : new SegmentedIndex(parts);
+        }
+    }
+
+    // Write songs as a new segment. Returns its number.
+    public int append(CompactIndex songs) throws IOException {
+
+        FileLock lock = lock();
+        try {
+            MappedIndex main = openMain();
+            int last = (main == null) ? 0 : main.getLastSegment();
+            TreeMap<Integer, File> segments = segments(0);
+            if (!segments.isEmpty()) {
+                last = Math.max(last, segments.lastKey());
+            }
+            int number = last + 1;
+            writeAtomically(songs, 0, new File(directory, segmentName(number)).toPath());
+            return number;
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    // Number of segment files not merged into the main index
+    public int getSegmentCount() throws IOException {
+        MappedIndex main = openMain();
+        return segments((main == null) ? 0 : main.getLastSegment()).size();
+    }
+
+    // Merge every segment into the main index
+    public void compact() throws IOException {
+
+        // Map the main index and the segments under the lock, so that no
+        // other compaction can delete them meanwhile
+        MappedIndex main;
+        List<MappedIndex> segments = new ArrayList<MappedIndex>();
+        int last;
+        FileLock lock = lock();
+        try {
+            main = openMain();
+            TreeMap<Integer, File> files = segments((main == null) ? 0 : main.getLastSegment());
+            if (files.isEmpty()) {
+                deleteSegments((main == null) ? 0 : main.getLastSegment());
+                return;
+            }
+            for (File segment : files.values()) {
+                segments.add(MappedIndex.open(segment));
+            }
+            last = files.lastKey();
+        } finally {
+            unlock(lock);
+        }
+        int base = (main == null) ? 0 : main.getLastSegment();
+
+        CompactIndex.Builder builder = new CompactIndex.Builder();
+        if (main != null) {
+            builder.addAll(main);
+        }
+        for (MappedIndex segment : segments) {
+            builder.addAll(segment);
+        }
+        CompactIndex merged = builder.build();
+        // A temporary file of its own, as another process may be compacting
+        // (created like every other index file, not with createTempFile,
+        // which would make it readable only by its owner)
+        Path temporary = new File(directory, MAIN_FILE + "." + UUID.randomUUID() + ".tmp").toPath();
+        write(merged, last, temporary);
+
+        lock = lock();
+        try {
+            MappedIndex current = openMain();
+            if (((current == null) ? 0 : current.getLastSegment()) != base) {
+                // Another compaction got there first
+                Files.deleteIfExists(temporary);
+                return;
+            }
+            rename(temporary, getMainFile().toPath());
+            deleteSegments(last);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    // Write index as the main index (the segments are kept). Fails if there
+    // is already a main index, so that no song in it is lost.
+    public void createMain(CompactIndex index) throws IOException {
+
+        FileLock lock = lock();
+        try {
+            if (getMainFile().exists()) {
+                throw new FileAlreadyExistsException(getMainFile().toString());
+            }
+            writeAtomically(index, 0, getMainFile().toPath());
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    // Start compacting in a background thread if there are at least
+    // maxSegments segments and no compaction is running
+    public synchronized void compactInBackground(int maxSegments) throws IOException {
+
+        if ((compactor != null && compactor.isAlive()) || getSegmentCount() < maxSegments) {
+            return;
+        }
+        compactor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException ex) {
+                    System.out.println("Input/output error " + ex);
+                }
+            }
+        }, "index-compactor");
+        compactor.start();
+    }
+
+    private MappedIndex openMain() throws IOException {
+        try {
+            return MappedIndex.open(getMainFile());
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    // Segment files with a number after lastSegment, by number
+    private TreeMap<Integer, File> segments(int lastSegment) {
+        TreeMap<Integer, File> segments = new TreeMap<Integer, File>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length()));
+                        if (number > lastSegment) {
+                            segments.put(number, new File(directory, name));
+                        }
+                    } catch (NumberFormatException ex) {
+                        // Not a segment
+                    }
+                }
+            }
+        }
+        return segments;
+    }
+
+    // Delete the segments already in the main index
+    private void deleteSegments(int lastSegment) throws IOException {
+        for (File segment : segments(0).headMap(lastSegment, true).values()) {
+            Files.deleteIfExists(segment.toPath());
+        }
+    }
+
+    private static String segmentName(int number) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private void writeAtomically(CompactIndex index, int lastSegment, Path target) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        write(index, lastSegment, temporary);
+        rename(temporary, target);
+    }
+
+    // Write index to file and sync it to disk
+    private void write(CompactIndex index, int lastSegment, Path file) throws IOException {
+        Files.createDirectories(directory.toPath());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            index.write(channel, lastSegment);
+            channel.force(true);
+        }
+    }
+
+    // Atomic rename, then sync the directory so that the rename survives a
+    // crash (not possible on every platform)
+    private void rename(Path from, Path to) throws IOException {
+        Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // Directories cannot be opened or synced here
+        }
+    }
+
+    private FileLock lock() throws IOException {
+        writers.lock();
+        try {
+            Files.createDirectories(directory.toPath());
+            FileChannel channel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                return channel.lock();
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        } catch (IOException ex) {
+            writers.unlock();
+            throw ex;
+        }
+    }
+
+    private void unlock(FileLock lock) throws IOException {
+        try {
+            lock.channel().close();
+        } finally {
+            writers.unlock();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/*********************************************************************
+* MappedIndex is a FingerprintIndex read straight from a memory-mapped
+* index file, with no parsing: opening it only checks the header, so it
+* takes the same time whatever the size of the repository, and pages are
+* loaded by the OS as lookups touch them. The file (big-endian, written by
+* CompactIndex.write) holds the arrays of a CompactIndex one after
+* another:
+*
+*   header      magic "AFPI", version, table size, hash count, posting
+*               count, song count, song id bytes, last segment (8 ints)
+*   keys        long[table size]   open-addressing table
+*   slots       int[table size]    h + 1, or 0 if the slot is empty
+*   offsets     int[hash count + 1]
+*   (4 bytes of padding if needed to align the postings to 8 bytes)
+*   postings    long[posting count]  song id << 32 | timestamp
+*   songs       int[song count + 1]  offsets into the song id bytes
+*   song table  int[songTableSize(song count)]  open-addressing table of
+*               the song ids by String.hashCode: song + 1, or 0 if empty
+*   song ids    UTF-8 bytes
+*
+* The last segment is the number of the last segment file merged into this
+* index by IndexStore (0 for none). Version 1 files have no song table;
+* findSong then reads every song id once.
+*
+* Nothing is read per song when the file is opened: song ids are decoded
+* from the file each time they are asked for.
+**********************************************************************/
+
+public class MappedIndex implements FingerprintIndex {
+
+    static final int MAGIC = 0x41465049;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 32;
+
+    // Indices of the section positions returned by layout()
+    static final int KEYS = 0, SLOTS = 1, OFFSETS = 2, POSTINGS = 3, SONGS = 4, SONG_TABLE = 5, SONG_IDS = 6,
+            END = 7;
+
+    // Postings are mapped in pages, as a single mapping is limited to 2 GB
+    private static final int PAGE_BITS = 27;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private final LongBuffer keys;
+    private final IntBuffer slots;
+    private final int mask;
+    private final IntBuffer offsets;
+    private final LongBuffer[] postings;
+    private final int postingCount;
+    private final int lastSegment;
+    private final int songCount;
+    private final IntBuffer songs;
+    // Null in version 1 files
+    private final IntBuffer songTable;
+    private final ByteBuffer songIdBytes;
+    // Version 1 files: songId -> song, built on the first findSong
+    private Map<String, Integer> songsByName;
+
+    private MappedIndex(FileChannel channel, long[] layout, int tableSize,
+            int postingCount, int songCount, int lastSegment) throws IOException {
+        // Files under 2 GB are mapped at once and sliced
+        ByteBuffer whole = (layout[END] <= Integer.MAX_VALUE) ? map(channel, null, 0, layout[END]) : null;
+        this.keys = map(channel, whole, layout[KEYS], layout[SLOTS]).asLongBuffer();
+        this.slots = map(channel, whole, layout[SLOTS], layout[OFFSETS]).asIntBuffer();
+        this.mask = tableSize - 1;
+        this.offsets = map(channel, whole, layout[OFFSETS], layout[POSTINGS]).asIntBuffer();
+        this.postingCount = postingCount;
+        this.lastSegment = lastSegment;
+        this.postings = new LongBuffer[(int) ((postingCount + (long) PAGE_MASK) >>> PAGE_BITS)];
+        for (int page = 0; page < postings.length; page++) {
+            long from = layout[POSTINGS] + 8L * ((long) page << PAGE_BITS);
+            postings[page] = map(channel, whole, from, Math.min(from + (8L << PAGE_BITS), layout[SONGS])).asLongBuffer();
+        }
+        this.songCount = songCount;
+        this.songs = map(channel, whole, layout[SONGS], layout[SONG_TABLE]).asIntBuffer();
+        this.songTable = (layout[SONG_TABLE] == layout[SONG_IDS]) ? null
+                : map(channel, whole, layout[SONG_TABLE], layout[SONG_IDS]).asIntBuffer();
+        this.songIdBytes = map(channel, whole, layout[SONG_IDS], layout[END]);
+    }
+
+    // Map the index file. Throws IOException if it is not an index file of
+    // this version or it is truncated.
+    public static MappedIndex open(File file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not an index file");
+            }
+            int version = header.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException(file + ": unsupported index version " + version);
+            }
+            int tableSize = header.getInt();
+            int hashCount = header.getInt();
+            int postingCount = header.getInt();
+            int songCount = header.getInt();
+            int songIdBytes = header.getInt();
+            int lastSegment = header.getInt();
+            if (tableSize <= 0 || Integer.bitCount(tableSize) != 1 || hashCount < 0 || hashCount >= tableSize
+                    || postingCount < 0 || songCount < 0 || songIdBytes < 0 || lastSegment < 0) {
+                throw new IOException(file + ": corrupt index header");
+            }
+            long[] layout = layout(version, tableSize, hashCount, postingCount, songCount, songIdBytes);
+            if (channel.size() != layout[END]) {
+                throw new IOException(file + ": index file has " + channel.size()
+                        + " bytes, expected " + layout[END]);
+            }
+            return new MappedIndex(channel, layout, tableSize, postingCount, songCount, lastSegment);
+        }
+    }
+
+    // Position of each section of an index file of version, and its total
+    // size
+    static long[] layout(int version, int tableSize, int hashCount, int postingCount, int songCount,
+            int songIdBytes) {
+        long[] layout = new long[END + 1];
+        layout[KEYS] = HEADER_SIZE;
+        layout[SLOTS] = layout[KEYS] + 8L * tableSize;
+        layout[OFFSETS] = layout[SLOTS] + 4L * tableSize;
+        layout[POSTINGS] = (layout[OFFSETS] + 4L * (hashCount + 1) + 7) & ~7L;
+        layout[SONGS] = layout[POSTINGS] + 8L * postingCount;
+        layout[SONG_TABLE] = layout[SONGS] + 4L * (songCount + 1);
+        layout[SONG_IDS] = layout[SONG_TABLE] + ((version == 1) ? 0 : 4L * songTableSize(songCount));
+        layout[END] = layout[SONG_IDS] + songIdBytes;
+        return layout;
+    }
+
+    // Size of the song table: a power of two at least twice songCount, so
+    // that it is at most half full
+    static int songTableSize(int songCount) {
+        int size = 1;
+        while (size < 2L * songCount) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    // Bytes from to to of the file: a slice of whole, or a new mapping if
+    // the file is not mapped at once
+    private static ByteBuffer map(FileChannel channel, ByteBuffer whole, long from, long to) throws IOException {
+        if (whole == null) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        }
+        ByteBuffer section = whole.duplicate();
+        section.limit((int) to).position((int) from);
+        return section.slice();
+    }
+
+    // Slot of hash in the open-addressing table, or -1 if it is not there
+    private int find(long hash) {
+        int i = CompactIndex.mix(hash) & mask;
+        while (slots.get(i) != 0) {
+            if (keys.get(i) == hash) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private long posting(int p) {
+        return postings[p >>> PAGE_BITS].get(p & PAGE_MASK);
+    }
+
+    @Override
+    public void lookup(long hash, PostingVisitor visitor) {
+        int slot = find(hash);
+        if (slot < 0) {
+            return;
+        }
+        int h = slots.get(slot) - 1;
+        for (int p = offsets.get(h); p < offsets.get(h + 1); p++) {
+            long posting = posting(p);
+            visitor.visit((int) (posting >>> 32), (int) posting);
+        }
+    }
+
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i <= mask; i++) {
+            if (slots.get(i) != 0) {
+                int h = slots.get(i) - 1;
+                for (int p = offsets.get(h); p < offsets.get(h + 1); p++) {
+                    long posting = posting(p);
+                    visitor.visit(keys.get(i), (int) (posting >>> 32), (int) posting);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int count(long hash) {
+        int slot = find(hash);
+        if (slot < 0) {
+            return 0;
+        }
+        int h = slots.get(slot) - 1;
+        return offsets.get(h + 1) - offsets.get(h);
+    }
+
+    @Override
+    public int getSongCount() {
+        return songCount;
+    }
+
+    @Override
+    public String getSongId(int song) {
+        if (song < 0 || song >= songCount) {
+            throw new IndexOutOfBoundsException("Song " + song);
+        }
+        byte[] bytes = new byte[songs.get(song + 1) - songs.get(song)];
+        ByteBuffer name = songIdBytes.duplicate();
+        name.position(songs.get(song));
+        name.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int findSong(String songId) {
+        if (songTable == null) {
+            return findSongWithoutTable(songId);
+        }
+        int mask = songTable.capacity() - 1;
+        int i = CompactIndex.mix(songId.hashCode()) & mask;
+        int song;
+        while ((song = songTable.get(i)) != 0) {
+            if (getSongId(song - 1).equals(songId)) {
+                return song - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private synchronized int findSongWithoutTable(String songId) {
+        if (songsByName == null) {
+            songsByName = new HashMap<String, Integer>();
+            for (int s = 0; s < songCount; s++) {
+                songsByName.put(getSongId(s), s);
+            }
+        }
+        Integer song = songsByName.get(songId);
+        return (song == null) ? -1 : song;
+    }
+
+    @Override
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    public int getLastSegment() {
+        return lastSegment;
+    }
+}
@@ -0,0 +1,124 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*********************************************************************
+* SegmentedIndex merges several indexes (the main index and the segments
+* appended after it) at query time: a lookup visits the postings of the
+* hash in every part, in order.
+*
+* The songs of the first part (the main index) keep their ids, so opening
+* does not read them. Only the songs of the other parts (the segments,
+* which are small) are resolved when it is created: each one is looked up
+* by name in the first part (findSong) and in the songs of the previous
+* segments, and gets a new id after them if it is not there. ids[i] maps
+* the song ids of the i-th part to the merged ones. This is the numbering
+* CompactIndex.Builder.addAll gives when the parts are compacted, so a
+* song found in several parts is a single song and results do not change
+* after compaction.
+**********************************************************************/
+
+public class SegmentedIndex implements FingerprintIndex {
+
+    private final FingerprintIndex[] parts;
+    private final int[][] ids;
+    // Songs that are not in the first part, from id parts[0].getSongCount()
+    private final List<String> addedSongIds = new ArrayList<String>();
+    private final Map<String, Integer> addedSongs = new HashMap<String, Integer>();
+    private final long postingCount;
+
+    public SegmentedIndex(List<? extends FingerprintIndex> parts) {
+        this.parts = parts.toArray(new FingerprintIndex[parts.size()]);
+        this.ids = new int[this.parts.length][];
+        long postings = this.parts[0].getPostingCount();
+        for (int i = 1; i < this.parts.length; i++) {
+            ids[i] = new int[this.parts[i].getSongCount()];
+            for (int s = 0; s < ids[i].length; s++) {
+                ids[i][s] = intern(this.parts[i].getSongId(s));
+            }
+            postings += this.parts[i].getPostingCount();
+        }
+        this.postingCount = postings;
+    }
+
+    // Merged id of songId, adding it after the known songs if it is new
+    private int intern(String songId) {
+        int id = findSong(songId);
+        if (id < 0) {
+            id = parts[0].getSongCount() + addedSongIds.size();
+            addedSongIds.add(songId);
+            addedSongs.put(songId, id);
+        }
+        return id;
+    }
+
+    @Override
+    public void lookup(long hash, final PostingVisitor visitor) {
+        parts[0].lookup(hash, visitor);
+        for (int i = 1; i < parts.length; i++) {
+            final int[] id = ids[i];
+            parts[i].lookup(hash, new PostingVisitor() {
+                @Override
+                public void visit(int song, int timestamp) {
+                    visitor.visit(id[song], timestamp);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void forEach(final EntryVisitor visitor) {
+        parts[0].forEach(visitor);
+        for (int i = 1; i < parts.length; i++) {
+            final int[] id = ids[i];
+            parts[i].forEach(new EntryVisitor() {
+                @Override
+                public void visit(long hash, int song, int timestamp) {
+                    visitor.visit(hash, id[song], timestamp);
+                }
+            });
+        }
+    }
+
+    @Override
+    public int count(long hash) {
+        int count = 0;
+        for (FingerprintIndex part : parts) {
+            count += part.count(hash);
+        }
+        return count;
+    }
+
+    @Override
+    public int getSongCount() {
+        return parts[0].getSongCount() + addedSongIds.size();
+    }
+
+    @Override
+    public String getSongId(int song) {
+        int base = parts[0].getSongCount();
+        return (song < base) ? parts[0].getSongId(song) : addedSongIds.get(song - base);
+    }
+
+    @Override
+    public int findSong(String songId) {
+        int song = parts[0].findSong(songId);
+        if (song < 0) {
+            Integer added = addedSongs.get(songId);
+            song = (added == null) ? -1 : added;
+        }
+        return song;
+    }
+
+    @Override
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    public int getPartCount() {
+        return parts.length;
+    }
+}
@@ -1,6 +1,9 @@
 package serialization;
 
 import fingerprinting.KeyPoint;
+import index.CompactIndex;
+import index.FingerprintIndex;
+import index.IndexStore;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -15,6 +18,10 @@ import java.util.Map;
 
 public class Serialization {
 
+    // The song repository: a main index file plus a log of segment files
+    // (see IndexStore), which replaces the serialized hash table
+    private static final IndexStore INDEX_STORE = new IndexStore(new File("serialized"));
+
     // The serialized <songId,keypoints> hash table is inside the "serialized" 
     // directory in a file called "hashmap.ser" 
     public static void serializeHashMap(Map<Long, List<KeyPoint>> hashMap) {
@@ -39,11 +46,7 @@ public class Serialization {
         
         Map<Long, List<KeyPoint>> hashMap =  new HashMap<Long, List<KeyPoint>>();
         try {
-            FileInputStream fis = new FileInputStream("serialized/hashmap.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            hashMap = (Map<Long, List<KeyPoint>>) ois.readObject();
-            ois.close();
-            fis.close();
+            hashMap = readHashMap();
         } catch (FileNotFoundException ex) {
             System.out.println("\"hashmap.ser\" not found");
         } catch (IOException ex) {
@@ -53,4 +56,63 @@ public class Serialization {
         }
         return hashMap;
     }
+
+    // Read "hashmap.ser", failing if it is missing or cannot be read
+    @SuppressWarnings("unchecked")
+    private static Map<Long, List<KeyPoint>> readHashMap() throws IOException, ClassNotFoundException {
+
+        try (FileInputStream fis = new FileInputStream("serialized/hashmap.ser");
+                ObjectInputStream ois = new ObjectInputStream(fis)) {
+            return (Map<Long, List<KeyPoint>>) ois.readObject();
+        }
+    }
+
+    public static IndexStore indexStore() {
+        return INDEX_STORE;
+    }
+
+    // Map the song repository. If there is no index file yet but there is a
+    // "hashmap.ser", it is converted first (if the conversion fails nothing
+    // is written, and it is tried again next time). Opening the index does
+    // not read it, so it takes the same time for any size, and it writes
+    // nothing (except for the conversion).
+    public static FingerprintIndex loadIndex() {
+
+        if (!INDEX_STORE.getMainFile().exists() && new File("serialized/hashmap.ser").exists()) {
+            convertHashMap();
+        }
+        try {
+            return INDEX_STORE.open();
+        } catch (IOException ex) {
+            System.out.println("Input/output error " + ex);
+        }
+        return new CompactIndex.Builder().build();
+    }
+
+    // One-shot conversion of "hashmap.ser" into the main index file
+    // ("hashmap.ser" is left as it is). Nothing is written if there is
+    // already a main index file or "hashmap.ser" cannot be read. Returns
+    // true if it was converted.
+    public static boolean convertHashMap() {
+
+        if (INDEX_STORE.getMainFile().exists()) {
+            System.out.println("\"" + INDEX_STORE.getMainFile().getName()
+                    + "\" already exists, \"hashmap.ser\" not converted");
+            return false;
+        }
+        try {
+            CompactIndex index = CompactIndex.fromMap(readHashMap());
+            INDEX_STORE.createMain(index);
+            System.out.println("Converted \"hashmap.ser\": " + index.getSongCount() + " songs, "
+                    + index.getPostingCount() + " keypoints");
+            return true;
+        } catch (FileNotFoundException ex) {
+            System.out.println("\"hashmap.ser\" not found");
+        } catch (IOException ex) {
+            System.out.println("Input/output error " + ex);
+        } catch (ClassNotFoundException ex) {
+            System.out.println("Serialization error: class not found " + ex);
+        }
+        return false;
+    }
 }
@@ -1,5 +1,8 @@
 package utilities;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /*
  * Compute the FFT and inverse FFT of a length N complex sequence. Bare bones
  * implementation that runs in O(N log N) time. Our goal is to optimize the
@@ -10,10 +13,159 @@ package utilities;
  * - not the most memory efficient algorithm (because it uses an object type for
  * representing complex numbers and because it re-allocates memory for the
  * subarray, instead of doing in-place or reusing a single temporary array)
+ *
+ * For performance, fft(double[], double[]) and fftReal(...) work in place on
+ * separate re/im arrays, iteratively (bit-reversal permutation followed by the
+ * butterflies), with the twiddle factors and the permutation precomputed once
+ * per size. They allocate nothing once the tables for a size exist.
  * 
  *************************************************************************/
 public class FFT {
 
+    // Per-size tables: twiddles cos/sin(2*pi*k/N) for k < N/2 and the
+    // bit-reversal permutation. Shared by all threads.
+    private static final ConcurrentMap<Integer, Tables> TABLES =
+            new ConcurrentHashMap<Integer, Tables>();
+
+    private static final class Tables {
+        final double[] cos;
+        final double[] sin;
+        final int[] reversed;
+
+        Tables(int n) {
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int k = 0; k < n / 2; k++) {
+                double angle = 2 * Math.PI * k / n;
+                cos[k] = Math.cos(angle);
+                sin[k] = Math.sin(angle);
+            }
+            int bits = Integer.numberOfTrailingZeros(n);
+            reversed = new int[n];
+            for (int i = 0; i < n; i++) {
+                reversed[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+        }
+    }
+
+    private static Tables tables(int n) {
+        if (n <= 0 || (n & (n - 1)) != 0) {
+            throw new RuntimeException("N is not a power of 2");
+        }
+        Tables t = TABLES.get(n);
+        if (t == null) {
+            t = new Tables(n);
+            Tables previous = TABLES.putIfAbsent(n, t);
+            if (previous != null) {
+                t = previous;
+            }
+        }
+        return t;
+    }
+
+    // Compute in place the FFT of the complex sequence (re[], im[]), assuming
+    // both have the same length and it is a power of 2
+    public static void fft(double[] re, double[] im) {
+
+        int N = re.length;
+        if (im.length != N) {
+            throw new RuntimeException("Dimensions don't agree");
+        }
+        transform(re, im, N);
+    }
+
+    // In-place FFT of the first N entries of re[] and im[]
+    private static void transform(double[] re, double[] im, int N) {
+
+        Tables t = tables(N);
+
+        // Bit-reversal permutation
+        int[] reversed = t.reversed;
+        for (int i = 0; i < N; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double tmp = re[i];
+                re[i] = re[j];
+                re[j] = tmp;
+                tmp = im[i];
+                im[i] = im[j];
+                im[j] = tmp;
+            }
+        }
+
+        // Butterflies: at each level combine pairs of half-length transforms,
+        // using every (N / len)-th twiddle of the size N table
+        double[] cos = t.cos;
+        double[] sin = t.sin;
+        for (int len = 2; len <= N; len <<= 1) {
+            int half = len >> 1;
+            int step = N / len;
+            for (int start = 0; start < N; start += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = -sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    double xr = wr * re[b] - wi * im[b];
+                    double xi = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    // Compute the FFT of the real sequence x[] (length N, a power of 2 >= 2)
+    // with a single complex FFT of length N/2. Since the spectrum of a real
+    // sequence is symmetric (X[N-k] = conj(X[k])), only X[0..N/2] is written,
+    // into re[] and im[], which must have at least N/2 + 1 entries.
+    public static void fftReal(double[] x, double[] re, double[] im) {
+
+        int N = x.length;
+        int M = N / 2;
+        if (N < 2 || re.length < M + 1 || im.length < M + 1) {
+            throw new RuntimeException("Dimensions don't agree");
+        }
+
+        // Pack even samples as real parts and odd samples as imaginary parts
+        for (int n = 0; n < M; n++) {
+            re[n] = x[2 * n];
+            im[n] = x[2 * n + 1];
+        }
+        transform(re, im, M);
+
+        // Split Z = FFT(z) into the spectra of the even (E) and odd (O)
+        // samples and combine them: X[k] = E[k] + W^k O[k], and
+        // X[M - k] = conj(E[k] - W^k O[k]), with W = exp(-2*pi*i/N)
+        Tables t = tables(N);
+        double[] cos = t.cos;
+        double[] sin = t.sin;
+        double z0r = re[0];
+        double z0i = im[0];
+        re[0] = z0r + z0i;
+        im[0] = 0;
+        re[M] = z0r - z0i;
+        im[M] = 0;
+        for (int k = 1; k <= M / 2; k++) {
+            double ar = re[k], ai = im[k];
+            double br = re[M - k], bi = im[M - k];
+            double er = (ar + br) / 2;
+            double ei = (ai - bi) / 2;
+            double or = (ai + bi) / 2;
+            double oi = (br - ar) / 2;
+            double wr = cos[k];
+            double wi = -sin[k];
+            double tr = wr * or - wi * oi;
+            double ti = wr * oi + wi * or;
+            re[k] = er + tr;
+            im[k] = ei + ti;
+            re[M - k] = er - tr;
+            im[M - k] = ti - ei;
+        }
+    }
+
     // Compute the FFT of x[], assuming its length is a power of 2
     public static Complex [] fft(Complex[] x) {
        
@@ -1,9 +1,21 @@
 package utilities;
 
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
 import fingerprinting.AudioParams;
 
 public class Spectrum {
 
+    // Per-thread scratch arrays for one chunk, reused across chunks and calls
+    private static final ThreadLocal<double[][]> SCRATCH = new ThreadLocal<double[][]>() {
+        @Override
+        protected double[][] initialValue() {
+            int N = AudioParams.chunkSize;
+            return new double[][]{new double[N], new double[N / 2 + 1], new double[N / 2 + 1]};
+        }
+    };
+
     // Compute the magnitude spectrum from the recorded audio (time domain)
     public static double[][] compute(byte[] audioTimeDomain) {
 
@@ -15,36 +27,81 @@ public class Spectrum {
         // We will use this bidimensional array as output variable to return the magnitude spectrum
         double[][] resultsMag = new double[chunks][];
 
-        // Turning into frequency domain by using the FFT (Fast Fourier Transform): 
-            // We'll need to work with complex numbers, so we initialize and prepare them
-            // to perform the FFT:                
-                Complex[][] resultsComplex = new Complex[chunks][];
-                
-                // For each chunk/ventana:
-                for (int i = 0; i < chunks; i++) {                    
-                    // Put the time domain data contained in the current chunk into 
-                    // a complex number (complex) with 0 as imaginary part
-                    Complex[] complex = new Complex[AudioParams.chunkSize];
-                                        
-                    // ...  
-                    for(int j = 0; j < complex.length; j++) {
-                    		complex[j] = new Complex(audioTimeDomain[i * complex.length + j], 0);
-                    }
-                    
-                    // Perform the FFT for the current chunk (FFT.fft(complex))
-                    // and save the results into resultsComplex[i]
-                    // ... 
-                    resultsComplex[i] = FFT.fft(complex);
-                    
-                    // Initialize to avoid NullPointerExceptions
-                    resultsMag[i]= new double[AudioParams.chunkSize];
-                    
-                    // Save into resultsMag[i] the log magnitude for each frequency 
-                    // within each chunk
-                    for (int j = 0; j < AudioParams.chunkSize; j++) {
-                        resultsMag[i][j] = Math.log(resultsComplex[i][j].abs() + 1);
-                    }
-                }                       
+        // Turning into frequency domain by using the FFT (Fast Fourier Transform):
+        // each chunk is a real sequence, so FFT.fftReal computes its spectrum
+        // in place with an FFT of half the size. Scratch arrays are reused
+        // across chunks.
+        final int N = AudioParams.chunkSize;
+
+        // For each chunk/ventana:
+        for (int i = 0; i < chunks; i++) {
+            // Save into resultsMag[i] the log magnitude for each frequency
+            // within each chunk
+            resultsMag[i] = new double[N];
+            computeChunk(audioTimeDomain, i, resultsMag[i], 0);
+        }
+        return resultsMag;
+    }
+
+    // Number of complete chunks/ventanas in the recorded audio
+    public static int chunks(byte[] audioTimeDomain) {
+        return audioTimeDomain.length / AudioParams.chunkSize;
+    }
+
+    // Compute the magnitude spectrum into one flat array: the spectrum of
+    // chunk c is at [c * chunkSize, (c + 1) * chunkSize)
+    public static double[] computeFlat(byte[] audioTimeDomain) {
+
+        int chunks = chunks(audioTimeDomain);
+        double[] resultsMag = new double[chunks * AudioParams.chunkSize];
+        for (int c = 0; c < chunks; c++) {
+            computeChunk(audioTimeDomain, c, resultsMag, c * AudioParams.chunkSize);
+        }
         return resultsMag;
     }
+
+    // Same as computeFlat, with the chunks split across the threads of the
+    // common ForkJoinPool. Every chunk is independent and writes only its own
+    // slice of the result, so no synchronization is needed.
+    public static double[] computeParallel(final byte[] audioTimeDomain) {
+
+        int chunks = chunks(audioTimeDomain);
+        final double[] resultsMag = new double[chunks * AudioParams.chunkSize];
+        IntStream.range(0, chunks).parallel().forEach(new IntConsumer() {
+            @Override
+            public void accept(int c) {
+                computeChunk(audioTimeDomain, c, resultsMag, c * AudioParams.chunkSize);
+            }
+        });
+        return resultsMag;
+    }
+
+    // Compute the log magnitude spectrum of chunk c of the audio into
+    // out[off, off + chunkSize), using the scratch arrays of this thread
+    public static void computeChunk(byte[] audioTimeDomain, int c, double[] out, int off) {
+
+        final int N = AudioParams.chunkSize;
+        double[][] scratch = SCRATCH.get();
+        double[] samples = scratch[0];
+        double[] re = scratch[1];
+        double[] im = scratch[2];
+        for (int j = 0; j < N; j++) {
+            samples[j] = audioTimeDomain[c * N + j];
+        }
+        FFT.fftReal(samples, re, im);
+        logMagnitude(re, im, out, off, N);
+    }
+
+    // Write log(|X[j]| + 1) for the N frequencies of a real chunk into
+    // out[off, off + N), given X[0..N/2] in re[] and im[] (the upper half
+    // mirrors the lower one)
+    static void logMagnitude(double[] re, double[] im, double[] out, int off, int N) {
+        for (int j = 0; j <= N / 2; j++) {
+            double mag = Math.log(Math.sqrt(re[j] * re[j] + im[j] * im[j]) + 1);
+            out[off + j] = mag;
+            if (j > 0 && j < N / 2) {
+                out[off + N - j] = mag;
+            }
+        }
+    }
 }